@@ -3,7 +3,10 @@ package com.example.integraa_android_junaid.data.api;
 import com.example.integraa_android_junaid.data.api.models.LoginResponse;
 import com.example.integraa_android_junaid.data.api.models.PermissionResponse;
 
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
+import retrofit2.http.Body;
 import retrofit2.http.Field;
 import retrofit2.http.FormUrlEncoded;
 import retrofit2.http.GET;
@@ -25,5 +28,15 @@ public interface ApiService {
     Call<PermissionResponse> getPermissions(
             @Header("token") String token
     );
+
+    /**
+     * Upload audit log segments, concatenated and gzip-compressed.
+     */
+    @POST("waterAuditLog")
+    Call<ResponseBody> uploadAuditLog(
+            @Header("token") String token,
+            @Header("Content-Encoding") String contentEncoding,
+            @Body RequestBody segments
+    );
 }
 
@@ -0,0 +1,860 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothProfile;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.integraa_android_junaid.data.local.KnownDeviceRegistry;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One GATT link to a meter, owned by the connection pool in {@link BluetoothManager}.
+ * Holds the BluetoothGatt, its operation queue, the resolved characteristic handles, the
+ * negotiated MTU and the connection / idle timers, and translates raw GATT callbacks into {@link BluetoothManager.BluetoothGattCallback} events.
+ * Transient connection failures (GATT_ERROR 133, timeouts, failed discovery) are retried
+ * according to the {@link ReconnectPolicy}; listeners only hear about the final outcome.
+ * Several callers can listen to one link (e.g. the session and a background job on the
+ * same meter); each event goes to all of them.
+ * What a ready link learned about the meter goes into the {@link KnownDeviceRegistry}; the
+ * next connection skips a pointless MTU exchange when the meter still has the same layout,
+ * and clears the stack's service cache first when the stored layout was invalidated.
+ */
+public class BluetoothConnection {
+    private static final String TAG = "BluetoothConnection";
+    static final UUID SERVICE_UUID = UUID.fromString("0000ffe0-0000-1000-8000-00805f9b34fb");
+    static final UUID CHARACTERISTIC_UUID = UUID.fromString("0000ffe1-0000-1000-8000-00805f9b34fb");
+    // Client Characteristic Configuration descriptor, switches notifications on and off
+    private static final UUID CCCD_UUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+    private static final long CONNECTION_TIMEOUT_MS = 15000; // 15 seconds
+    private static final long AUTO_CONNECT_TIMEOUT_MS = 30000; // autoConnect waits for the next advertisement
+    private static final long IDLE_TIMEOUT_MS = 60000; // 1 minute without traffic
+    private static final int DEFAULT_MTU = 23; // BLE 4.0 default ATT MTU
+    private static final int MAX_MTU = 517; // Largest ATT MTU Android will negotiate
+    private static final int ATT_WRITE_HEADER_SIZE = 3; // Opcode + attribute handle
+
+    public enum State {
+        CONNECTING,
+        DISCOVERING,
+        READY,
+        DISCONNECTED
+    }
+
+    /**
+     * Notified when the link changes state, goes away or sat idle long enough to be released.
+     */
+    interface Observer {
+        void onStateChanged(BluetoothConnection connection);
+        void onConnectionClosed(BluetoothConnection connection);
+        void onConnectionIdle(BluetoothConnection connection);
+    }
+
+    private final Context context;
+    private final BluetoothDevice device;
+    private final String address;
+    private final Handler handler;
+    private final Observer observer;
+    private final ReconnectPolicy reconnectPolicy;
+    private final ConnectionMetrics metrics;
+    private final ResponseAssembler responseAssembler;
+    private final ResponseCorrelator responseCorrelator;
+    private final KnownDeviceRegistry knownDevices;
+    // What the registry knew when this link was opened, or null
+    private volatile KnownDeviceRegistry.KnownDevice known;
+    private volatile BluetoothGatt gatt;
+    private volatile GattOperationQueue queue;
+    private volatile GattHandles handles;
+    private volatile State state = State.DISCONNECTED;
+    private volatile int mtu = DEFAULT_MTU;
+    private volatile LinkProfile profile = LinkProfile.INTERACTIVE;
+    // Whether the local controller can do the 2M PHY; the meter's side is settled by the PHY update
+    private volatile boolean le2mSupported = false;
+    private volatile int txPhy = BluetoothDevice.PHY_LE_1M;
+    private volatile long lastUsedAt;
+    private final CopyOnWriteArrayList<BluetoothManager.BluetoothGattCallback> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean keepAlive = false;
+    private volatile boolean notificationsEnabled = false;
+    // Set between a failed attempt and the scheduled retry; callbacks from the old GATT are ignored
+    private volatile boolean awaitingRetry = false;
+    private int attempt = 0;
+    private long connectStartedAt;
+    private final Runnable connectionTimeout = this::onConnectionTimeout;
+    private final Runnable retryConnect = this::retryConnect;
+    private final Runnable idleTimeout = this::onIdleTimeout;
+
+    BluetoothConnection(Context context, BluetoothDevice device, Handler handler, Observer observer,
+                        ReconnectPolicy reconnectPolicy, ConnectionMetrics metrics,
+                        FrameValidator frameValidator, KnownDeviceRegistry knownDevices) {
+        this.context = context;
+        this.device = device;
+        this.address = device.getAddress();
+        this.handler = handler;
+        this.observer = observer;
+        this.reconnectPolicy = reconnectPolicy;
+        this.metrics = metrics;
+        this.knownDevices = knownDevices;
+        this.responseCorrelator = new ResponseCorrelator(handler, ResponseCorrelator.DEFAULT_OPCODE_OFFSET);
+        this.responseAssembler = new ResponseAssembler(handler, frameValidator, responseCorrelator::onFrame);
+        this.lastUsedAt = SystemClock.elapsedRealtime();
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public BluetoothDevice getDevice() {
+        return device;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    private void setState(State newState) {
+        if (state != newState) {
+            state = newState;
+            observer.onStateChanged(this);
+        }
+    }
+
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    public long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    public boolean isIdle() {
+        GattOperationQueue q = queue;
+        return q == null || q.isIdle();
+    }
+
+    void addListener(BluetoothManager.BluetoothGattCallback listener) {
+        if (listener != null) {
+            listeners.addIfAbsent(listener);
+        }
+    }
+
+    /**
+     * Whether anyone is listening to the link, i.e. a caller still uses it
+     */
+    boolean isHeld() {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * @return Whether anyone is still listening to the link
+     */
+    boolean removeListener(BluetoothManager.BluetoothGattCallback listener) {
+        listeners.remove(listener);
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * A kept-alive link is never released by the idle timer (it can still be evicted).
+     */
+    void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Ask the controller for a different connection interval.
+     * @param priority One of BluetoothGatt.CONNECTION_PRIORITY_*
+     */
+    boolean requestConnectionPriority(int priority) {
+        BluetoothGatt g = gatt;
+        if (g == null || state != State.READY) {
+            return false;
+        }
+        try {
+            return g.requestConnectionPriority(priority);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Permission denied requesting connection priority", e);
+            return false;
+        }
+    }
+
+    public LinkProfile getLinkProfile() {
+        return profile;
+    }
+
+    /**
+     * Transmit PHY the controller reported last, one of BluetoothDevice.PHY_LE_*
+     */
+    public int getTxPhy() {
+        return txPhy;
+    }
+
+    /**
+     * Switch the link to another profile. Takes effect right away if the link is ready,
+     * otherwise once it is.
+     * @param le2mSupported The local controller supports the 2M PHY
+     */
+    void setLinkProfile(LinkProfile newProfile, boolean le2mSupported) {
+        this.le2mSupported = le2mSupported;
+        if (profile == newProfile) {
+            return;
+        }
+        profile = newProfile;
+        applyLinkProfile();
+    }
+
+    /**
+     * A fresh link starts on the 1M PHY at balanced priority, which is what
+     * {@link LinkProfile#INTERACTIVE} asks for, so that profile only needs applying to undo another.
+     */
+    private void applyLinkProfile() {
+        BluetoothGatt g = gatt;
+        if (g == null || state != State.READY) {
+            return;
+        }
+        LinkProfile p = profile;
+        requestConnectionPriority(p.getConnectionPriority());
+        int phy = p.prefers2mPhy() && le2mSupported ? BluetoothDevice.PHY_LE_2M_MASK : BluetoothDevice.PHY_LE_1M_MASK;
+        boolean phyChangeNeeded = phy == BluetoothDevice.PHY_LE_2M_MASK ? txPhy != BluetoothDevice.PHY_LE_2M
+                : txPhy != BluetoothDevice.PHY_LE_1M;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && phyChangeNeeded) {
+            try {
+                g.setPreferredPhy(phy, phy, BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+            } catch (SecurityException e) {
+                Log.e(TAG, "Permission denied setting preferred PHY", e);
+            }
+        }
+        Log.d(TAG, address + " switched to " + p + " link profile");
+    }
+
+    /**
+     * Open the GATT link. Throws SecurityException if BLUETOOTH_CONNECT is missing.
+     */
+    void connect() {
+        known = knownDevices.get(address);
+        attempt = 0;
+        connectStartedAt = SystemClock.elapsedRealtime();
+        startAttempt();
+    }
+
+    private void startAttempt() {
+        attempt++;
+        awaitingRetry = false;
+        // Every new link starts on the 1M PHY
+        txPhy = BluetoothDevice.PHY_LE_1M;
+        setState(State.CONNECTING);
+        boolean autoConnect = reconnectPolicy.useAutoConnect(attempt);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            // Deliver GATT callbacks on the connection's own thread instead of a binder thread
+            gatt = device.connectGatt(context, autoConnect, gattCallback, BluetoothDevice.TRANSPORT_LE,
+                    BluetoothDevice.PHY_LE_1M_MASK, handler);
+        } else {
+            gatt = device.connectGatt(context, autoConnect, gattCallback, BluetoothDevice.TRANSPORT_LE);
+        }
+        BluetoothGatt g = gatt;
+        queue = new GattOperationQueue(g, handler, () -> onQueueStalled(g));
+        handler.removeCallbacks(connectionTimeout);
+        handler.postDelayed(connectionTimeout, autoConnect ? AUTO_CONNECT_TIMEOUT_MS : CONNECTION_TIMEOUT_MS);
+        Log.d(TAG, "Connecting to device: " + address + " (attempt " + attempt + "/"
+                + reconnectPolicy.getMaxAttempts() + (autoConnect ? ", autoConnect" : "") + ")");
+    }
+
+    private void retryConnect() {
+        if (!awaitingRetry) {
+            return;
+        }
+        try {
+            startAttempt();
+        } catch (SecurityException e) {
+            Log.e(TAG, "Permission denied reconnecting to device", e);
+            failConnection("Permission denied");
+        } catch (Exception e) {
+            Log.e(TAG, "Error reconnecting to device", e);
+            failConnection("Connection error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A connection attempt failed before the link became ready. Drops the stale GATT and
+     * either schedules another attempt or reports the failure to the listeners.
+     * @param status GATT status of the failure, or a ReconnectPolicy.STATUS_* code
+     * @param refreshCache Also clear the stack's cached service table for the device
+     */
+    private void onAttemptFailed(int status, String errorMsg, boolean refreshCache) {
+        handler.removeCallbacks(connectionTimeout);
+        if (reconnectPolicy.shouldRetry(attempt, status)) {
+            awaitingRetry = true;
+            releaseGatt(refreshCache);
+            long delay = reconnectPolicy.nextDelayMs(attempt);
+            Log.w(TAG, "Attempt " + attempt + " to " + address + " failed (status " + status
+                    + "), retrying in " + delay + " ms");
+            handler.postDelayed(retryConnect, delay);
+            return;
+        }
+        metrics.recordFailure(attempt);
+        Log.w(TAG, "Giving up on " + address + " after " + attempt + " attempt(s); " + metrics);
+        failConnection(errorMsg);
+    }
+
+    /**
+     * Close the GATT of a failed attempt. Android keeps a limited number of GATT clients,
+     * and a client that is not closed keeps failing with status 133, so every attempt
+     * starts from a fresh one.
+     */
+    private void releaseGatt(boolean refreshCache) {
+        GattOperationQueue q = queue;
+        if (q != null) {
+            q.close("Bluetooth device disconnected");
+        }
+        BluetoothGatt g = gatt;
+        if (g != null) {
+            try {
+                g.disconnect();
+                if (refreshCache) {
+                    refreshDeviceCache(g);
+                }
+                g.close();
+            } catch (Exception e) {
+                Log.e(TAG, "Error closing stale GATT", e);
+            }
+        }
+        gatt = null;
+        queue = null;
+        handles = null;
+    }
+
+    /**
+     * Clear the cached service table so the next discovery reads it from the device.
+     * BluetoothGatt.refresh() is hidden API, hence reflection; failures are ignored.
+     */
+    private static void refreshDeviceCache(BluetoothGatt g) {
+        try {
+            Method refresh = g.getClass().getMethod("refresh");
+            Object result = refresh.invoke(g);
+            Log.d(TAG, "GATT cache refresh: " + result);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not refresh GATT cache", e);
+        }
+    }
+
+    /**
+     * Tear the link down. No further listener events are delivered.
+     */
+    void close() {
+        handler.removeCallbacks(connectionTimeout);
+        handler.removeCallbacks(idleTimeout);
+        handler.removeCallbacks(retryConnect);
+        setState(State.DISCONNECTED);
+        awaitingRetry = false;
+        notificationsEnabled = false;
+        responseCorrelator.failAll("Bluetooth device disconnected");
+        handler.post(responseAssembler::reset);
+        GattOperationQueue q = queue;
+        if (q != null) {
+            q.close("Bluetooth device disconnected");
+        }
+        BluetoothGatt g = gatt;
+        if (g != null) {
+            try {
+                g.disconnect();
+                g.close();
+            } catch (Exception e) {
+                Log.e(TAG, "Error disconnecting", e);
+            }
+        }
+        gatt = null;
+        queue = null;
+        handles = null;
+        listeners.clear();
+    }
+
+    /**
+     * Mark the link as used and push its idle deadline out.
+     */
+    void touch() {
+        lastUsedAt = SystemClock.elapsedRealtime();
+        if (state == State.READY) {
+            handler.removeCallbacks(idleTimeout);
+            handler.postDelayed(idleTimeout, IDLE_TIMEOUT_MS);
+        }
+    }
+
+    /**
+     * Write a request and complete on the matching reply from the meter. Without
+     * notifications there is no reply channel, so this falls back to a plain send.
+     */
+    void request(byte[] bytes, WriteMode writeMode, long requestedAt, BluetoothManager.SendCallback callback) {
+        if (!notificationsEnabled) {
+            send(bytes, writeMode, requestedAt, callback);
+            return;
+        }
+        ResponseCorrelator.PendingRequest pending = responseCorrelator.register(bytes, requestedAt, callback);
+        send(bytes, writeMode, requestedAt, result -> {
+            if (result.isSuccess()) {
+                responseCorrelator.onWritten(pending);
+            } else {
+                responseCorrelator.fail(pending, result.getErrorMessage());
+            }
+        });
+    }
+
+    /**
+     * Write a frame to the meter characteristic, split into MTU-sized fragments.
+     */
+    void send(byte[] bytes, WriteMode writeMode, long requestedAt, BluetoothManager.SendCallback callback) {
+        BluetoothGatt g = gatt;
+        GattOperationQueue q = queue;
+        if (g == null || q == null) {
+            Log.e(TAG, "Bluetooth GATT not connected");
+            callback.onComplete(new BluetoothManager.SendResult(false, "Bluetooth device not connected"));
+            return;
+        }
+        touch();
+
+        GattHandles h = handles;
+        if (h == null) {
+            // Only while the service table is being re-discovered
+            h = GattHandles.resolve(g);
+            if (h.isValid()) {
+                handles = h;
+            }
+        }
+        if (!h.isValid()) {
+            Log.e(TAG, h.getError());
+            callback.onComplete(new BluetoothManager.SendResult(false, h.getError()));
+            return;
+        }
+        BluetoothGattCharacteristic characteristic = h.getCharacteristic();
+
+        int chunkSize = mtu - ATT_WRITE_HEADER_SIZE;
+        boolean pipelined = writeMode == WriteMode.PIPELINED && h.supportsWriteNoResponse();
+        if (writeMode == WriteMode.PIPELINED && !pipelined) {
+            Log.w(TAG, "Write without response not supported, falling back to acknowledged writes");
+        }
+        writeFragments(q, characteristic, bytes, chunkSize, pipelined ? BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+                : BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT, requestedAt, callback);
+    }
+
+    /**
+     * Queue all MTU-sized fragments of a frame in one step, so no other operation can run
+     * between them. Acknowledged fragments go out once the device confirmed the previous
+     * one; write-without-response fragments as soon as the stack handed the previous one
+     * off, retrying while the controller buffer is full. A failed fragment cancels the
+     * fragments of this frame that have not been written yet.
+     * @param writeType BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT or WRITE_TYPE_NO_RESPONSE
+     */
+    private void writeFragments(GattOperationQueue q, BluetoothGattCharacteristic characteristic, byte[] bytes,
+                                int chunkSize, int writeType, long requestedAt, BluetoothManager.SendCallback callback) {
+        int fragmentCount = (bytes.length + chunkSize - 1) / chunkSize;
+        List<GattOperation> operations = new ArrayList<>(fragmentCount);
+        AtomicInteger remaining = new AtomicInteger(fragmentCount);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        String kind = writeType == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE ? "Pipelined payload" : "Payload";
+
+        GattOperation.OperationCallback fragmentCallback = new GattOperation.OperationCallback() {
+            @Override
+            public void onSuccess(byte[] value, int intValue, long latencyMs) {
+                if (remaining.decrementAndGet() == 0 && !failed.get()) {
+                    long totalMs = SystemClock.elapsedRealtime() - requestedAt;
+                    Log.d(TAG, kind + " sent to " + address + " in " + totalMs + " ms (" + fragmentCount + " fragment(s))");
+                    callback.onComplete(new BluetoothManager.SendResult(true, null, totalMs));
+                }
+            }
+
+            @Override
+            public void onError(String error) {
+                if (failed.compareAndSet(false, true)) {
+                    for (GattOperation operation : operations) {
+                        operation.cancel();
+                    }
+                    Log.e(TAG, kind + " write failed: " + error);
+                    callback.onComplete(new BluetoothManager.SendResult(false, error, SystemClock.elapsedRealtime() - requestedAt));
+                }
+            }
+        };
+
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            int length = Math.min(chunkSize, bytes.length - offset);
+            byte[] chunk = new byte[length];
+            System.arraycopy(bytes, offset, chunk, 0, length);
+            operations.add(GattOperation.writeCharacteristic(characteristic, chunk, writeType, fragmentCallback));
+        }
+        q.enqueueAll(operations);
+    }
+
+    /**
+     * Ask for the largest MTU once services are known and remember what the device granted.
+     * The continuation runs either way; on failure the default MTU is used for chunking.
+     * @param knownDefault The registry says the meter only granted the default last time, and
+     *                     discovery just found the layout it had then
+     */
+    private void negotiateMtu(boolean knownDefault, Runnable onComplete) {
+        GattOperationQueue q = queue;
+        if (q == null || knownDefault) {
+            if (knownDefault) {
+                Log.d(TAG, address + " is known to use the default MTU, not negotiating");
+                mtu = DEFAULT_MTU;
+            }
+            onComplete.run();
+            return;
+        }
+        q.enqueue(GattOperation.requestMtu(MAX_MTU, new GattOperation.OperationCallback() {
+            @Override
+            public void onSuccess(byte[] value, int intValue, long latencyMs) {
+                Log.d(TAG, "MTU negotiated with " + address + ": " + intValue);
+                if (intValue >= DEFAULT_MTU) {
+                    mtu = intValue;
+                }
+                onComplete.run();
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.w(TAG, "MTU negotiation failed, using default: " + error);
+                mtu = DEFAULT_MTU;
+                onComplete.run();
+            }
+        }));
+    }
+
+    /**
+     * Subscribe to replies on the meter characteristic: enable it locally, then write the
+     * CCCD through the queue. The continuation runs either way; without a subscription
+     * requests complete on the write acknowledgement.
+     */
+    private void enableNotifications(GattHandles h, Runnable onComplete) {
+        BluetoothGatt g = gatt;
+        GattOperationQueue q = queue;
+        notificationsEnabled = false;
+        if (g == null || q == null || !h.isValid() || !h.supportsReplies()) {
+            onComplete.run();
+            return;
+        }
+        BluetoothGattCharacteristic characteristic = h.getCharacteristic();
+        BluetoothGattDescriptor cccd = characteristic.getDescriptor(CCCD_UUID);
+        if (cccd == null) {
+            Log.w(TAG, "Characteristic has no CCCD, replies not available");
+            onComplete.run();
+            return;
+        }
+        try {
+            if (!g.setCharacteristicNotification(characteristic, true)) {
+                Log.w(TAG, "Could not enable notifications locally");
+                onComplete.run();
+                return;
+            }
+        } catch (SecurityException e) {
+            Log.e(TAG, "Permission denied enabling notifications", e);
+            onComplete.run();
+            return;
+        }
+        byte[] value = h.supportsNotify() ? BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE
+                : BluetoothGattDescriptor.ENABLE_INDICATION_VALUE;
+        q.enqueue(GattOperation.writeDescriptor(cccd, value, new GattOperation.OperationCallback() {
+            @Override
+            public void onSuccess(byte[] result, int intValue, long latencyMs) {
+                Log.d(TAG, "Subscribed to replies from " + address);
+                notificationsEnabled = true;
+                onComplete.run();
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.w(TAG, "Failed to subscribe to replies: " + error);
+                onComplete.run();
+            }
+        }));
+    }
+
+    /**
+     * Services are known: cache the handles, negotiate the MTU and subscribe to replies,
+     * then report the link as ready. The MTU goes first so the first send is chunked correctly.
+     */
+    private void onServicesReady(GattHandles resolved, String layoutHash) {
+        handles = resolved;
+        if (!resolved.isValid()) {
+            Log.e(TAG, resolved.getError());
+        }
+        KnownDeviceRegistry.KnownDevice k = known;
+        boolean knownDefaultMtu = k != null && k.getMtu() == DEFAULT_MTU && layoutHash != null
+                && layoutHash.equals(k.getLayoutHash());
+        // The attempt may have failed (and its GATT been dropped) while these were queued
+        GattOperationQueue q = queue;
+        negotiateMtu(knownDefaultMtu, () -> enableNotifications(resolved, () -> {
+            if (state != State.DISCOVERING || queue != q) {
+                return;
+            }
+            handler.removeCallbacks(connectionTimeout);
+            setState(State.READY);
+            if (profile != LinkProfile.INTERACTIVE) {
+                applyLinkProfile();
+            }
+            long elapsed = SystemClock.elapsedRealtime() - connectStartedAt;
+            metrics.recordSuccess(attempt, elapsed);
+            Log.d(TAG, "Connected to " + address + " after " + attempt + " attempt(s) in " + elapsed + " ms");
+            if (resolved.isValid()) {
+                knownDevices.recordConnected(address, mtu, layoutHash, resolved.supportsWrite(),
+                        resolved.supportsWriteNoResponse(), notificationsEnabled);
+            }
+            touch();
+            for (BluetoothManager.BluetoothGattCallback l : listeners) {
+                l.onServicesDiscovered();
+            }
+        }));
+    }
+
+    /**
+     * A GATT operation never completed. The stack still has it outstanding, so nothing
+     * else can safely run on this GATT; drop it like a lost link.
+     */
+    private void onQueueStalled(BluetoothGatt g) {
+        if (gatt != g || state == State.DISCONNECTED || awaitingRetry) {
+            return;
+        }
+        if (state == State.READY) {
+            Log.w(TAG, "GATT operation on " + address + " stalled, closing the link");
+            dropLink();
+        } else {
+            onAttemptFailed(ReconnectPolicy.STATUS_TIMEOUT,
+                    "Connection timeout. Device may be out of range or not responding.", false);
+        }
+    }
+
+    /**
+     * Close the link and tell its listeners it is gone, as if it dropped (e.g. when the
+     * pool evicts it or a GATT operation stalled).
+     */
+    void dropLink() {
+        handler.removeCallbacks(connectionTimeout);
+        List<BluetoothManager.BluetoothGattCallback> notified = new ArrayList<>(listeners);
+        close();
+        observer.onConnectionClosed(this);
+        for (BluetoothManager.BluetoothGattCallback l : notified) {
+            l.onDisconnected();
+        }
+    }
+
+    private void onConnectionTimeout() {
+        if ((state == State.CONNECTING || state == State.DISCOVERING) && !awaitingRetry) {
+            Log.w(TAG, "Connection timeout - disconnecting " + address);
+            onAttemptFailed(ReconnectPolicy.STATUS_TIMEOUT,
+                    "Connection timeout. Device may be out of range or not responding.", false);
+        }
+    }
+
+    private void onIdleTimeout() {
+        if (state != State.READY) {
+            return;
+        }
+        if (keepAlive || !isIdle()) {
+            touch();
+            return;
+        }
+        Log.d(TAG, "Connection to " + address + " idle for " + IDLE_TIMEOUT_MS + " ms");
+        observer.onConnectionIdle(this);
+    }
+
+    private void failConnection(String errorMsg) {
+        List<BluetoothManager.BluetoothGattCallback> notified = new ArrayList<>(listeners);
+        close();
+        observer.onConnectionClosed(this);
+        for (BluetoothManager.BluetoothGattCallback l : notified) {
+            l.onConnectionFailed(errorMsg);
+        }
+    }
+
+    private final android.bluetooth.BluetoothGattCallback gattCallback = new android.bluetooth.BluetoothGattCallback() {
+        @Override
+        public void onConnectionStateChange(BluetoothGatt g, int status, int newState) {
+            if (isStale(g)) {
+                return;
+            }
+            if (newState == BluetoothProfile.STATE_CONNECTED) {
+                if (status == BluetoothGatt.GATT_SUCCESS) {
+                    setState(State.DISCOVERING);
+                    for (BluetoothManager.BluetoothGattCallback l : listeners) {
+                        l.onConnected();
+                    }
+                    // A new BluetoothGatt has no services until discovery, so it always runs; the
+                    // stack answers it from its own cache for meters it has seen. A meter whose
+                    // stored layout was invalidated (failed discovery, service change) may have
+                    // a stale entry there, so that one is read from the device.
+                    KnownDeviceRegistry.KnownDevice k = known;
+                    if (k != null && k.getLayoutHash() == null) {
+                        Log.d(TAG, "Known layout of " + address + " was invalidated, refreshing the service cache");
+                        refreshDeviceCache(g);
+                    }
+                    g.discoverServices();
+                } else {
+                    onAttemptFailed(status, describeConnectionError(status), status == 133);
+                }
+            } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+                State previous = state;
+                if (previous != State.READY && status != BluetoothGatt.GATT_SUCCESS) {
+                    onAttemptFailed(status, describeConnectionError(status), status == 133);
+                    return;
+                }
+                dropLink();
+            }
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt g, int status) {
+            if (isStale(g)) {
+                return;
+            }
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                if (state == State.READY) {
+                    // Re-discovery after a service-changed indication; the link itself stays up
+                    GattHandles resolved = GattHandles.resolve(g);
+                    handles = resolved;
+                    Log.d(TAG, "Service table of " + address + " re-resolved");
+                    String layoutHash = GattHandles.layoutHash(g);
+                    enableNotifications(resolved, () -> {
+                        if (resolved.isValid()) {
+                            knownDevices.recordConnected(address, mtu, layoutHash, resolved.supportsWrite(),
+                                    resolved.supportsWriteNoResponse(), notificationsEnabled);
+                        }
+                    });
+                    return;
+                }
+                onServicesReady(GattHandles.resolve(g), GattHandles.layoutHash(g));
+            } else if (state == State.READY) {
+                Log.w(TAG, "Re-discovery failed with status " + status + ", handles resolved on demand");
+            } else {
+                String errorMsg = "Service discovery failed";
+                if (status == 8) {
+                    errorMsg = "Service discovery failed: Internal error";
+                } else if (status == 133) {
+                    errorMsg = "Service discovery failed: GATT error. Device may not support required services.";
+                }
+                // A stale service table is the usual cause, so refresh it before retrying
+                knownDevices.invalidateLayout(address);
+                onAttemptFailed(ReconnectPolicy.STATUS_DISCOVERY_FAILED, errorMsg, true);
+            }
+        }
+
+        @Override
+        public void onServiceChanged(BluetoothGatt g) {
+            if (isStale(g)) {
+                return;
+            }
+            // The meter's attribute table changed; cached handles may point at old attributes
+            Log.d(TAG, "Service changed on " + address + ", re-discovering");
+            handles = null;
+            knownDevices.invalidateLayout(address);
+            if (state == State.READY) {
+                try {
+                    g.discoverServices();
+                } catch (SecurityException e) {
+                    Log.e(TAG, "Permission denied re-discovering services", e);
+                }
+            }
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void onCharacteristicChanged(BluetoothGatt g, BluetoothGattCharacteristic characteristic) {
+            // Pre-API 33 delivery; the shared value can be overwritten by the next notification
+            byte[] value = characteristic.getValue();
+            onNotification(g, characteristic, value != null ? value.clone() : null);
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt g, BluetoothGattCharacteristic characteristic, byte[] value) {
+            onNotification(g, characteristic, value);
+        }
+
+        private void onNotification(BluetoothGatt g, BluetoothGattCharacteristic characteristic, byte[] value) {
+            if (isStale(g) || !CHARACTERISTIC_UUID.equals(characteristic.getUuid())) {
+                return;
+            }
+            touch();
+            handler.post(() -> responseAssembler.onNotification(value));
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt g, BluetoothGattCharacteristic characteristic, int status) {
+            onOperationComplete(g, GattOperation.Type.WRITE_CHARACTERISTIC, characteristic, status, null, 0);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void onCharacteristicRead(BluetoothGatt g, BluetoothGattCharacteristic characteristic, int status) {
+            onOperationComplete(g, GattOperation.Type.READ_CHARACTERISTIC, characteristic, status, characteristic.getValue(), 0);
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt g, BluetoothGattDescriptor descriptor, int status) {
+            onOperationComplete(g, GattOperation.Type.WRITE_DESCRIPTOR, descriptor, status, null, 0);
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt g, int newMtu, int status) {
+            onOperationComplete(g, GattOperation.Type.REQUEST_MTU, null, status, null, newMtu);
+        }
+
+        @Override
+        public void onPhyUpdate(BluetoothGatt g, int newTxPhy, int newRxPhy, int status) {
+            if (isStale(g)) {
+                return;
+            }
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                txPhy = newTxPhy;
+                Log.d(TAG, address + " PHY now tx=" + newTxPhy + " rx=" + newRxPhy);
+            } else {
+                Log.w(TAG, "PHY update for " + address + " failed with status " + status);
+            }
+        }
+
+        private void onOperationComplete(BluetoothGatt g, GattOperation.Type type, Object target, int status,
+                                         byte[] value, int intValue) {
+            GattOperationQueue q = queue;
+            if (q != null && !isStale(g)) {
+                q.onOperationComplete(type, target, status, value, intValue);
+            }
+        }
+
+        /**
+         * Events from a GATT object this connection no longer owns. The gatt field may
+         * still be unset if the stack calls back before connectGatt returned.
+         */
+        private boolean isStale(BluetoothGatt g) {
+            BluetoothGatt current = gatt;
+            return state == State.DISCONNECTED || awaitingRetry || (current != null && current != g);
+        }
+    };
+
+    static String describeConnectionError(int status) {
+        String errorMsg = "Connection failed";
+        if (status == 8) { // GATT_INTERNAL_ERROR
+            errorMsg = "Connection failed: Internal error. Device may be out of range.";
+        } else if (status == 19) { // GATT_CONN_TERMINATE_PEER_USER
+            errorMsg = "Connection terminated by device";
+        } else if (status == 22) { // GATT_CONN_TIMEOUT
+            errorMsg = "Connection timeout. Device not responding.";
+        } else if (status == 133) { // GATT_ERROR
+            errorMsg = "Connection error. Please ensure device is powered on and in range.";
+        }
+        return errorMsg;
+    }
+}
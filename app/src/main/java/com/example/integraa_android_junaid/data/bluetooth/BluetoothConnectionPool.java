@@ -0,0 +1,76 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Bounded set of open GATT links keyed by MAC address, kept in least-recently-used order.
+ */
+public class BluetoothConnectionPool {
+    private final int maxConnections;
+    // Access-ordered: iteration starts at the least recently used connection
+    private final LinkedHashMap<String, BluetoothConnection> connections = new LinkedHashMap<>(8, 0.75f, true);
+
+    public BluetoothConnectionPool(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public synchronized BluetoothConnection get(String address) {
+        return address != null ? connections.get(address) : null;
+    }
+
+    public synchronized void put(BluetoothConnection connection) {
+        connections.put(connection.getAddress(), connection);
+    }
+
+    /**
+     * Remove the entry only if it still maps to this exact connection.
+     */
+    public synchronized boolean remove(BluetoothConnection connection) {
+        BluetoothConnection existing = connections.get(connection.getAddress());
+        if (existing == connection) {
+            connections.remove(connection.getAddress());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Make room for one more connection by taking out the least recently used link that
+     * nobody holds: no listener, no GATT operation in flight and not kept alive. Links in
+     * use are never taken, so a job can't lose its meter to a newcomer; check
+     * {@link #hasRoom()} afterwards.
+     * @return The connection removed from the pool (caller closes it), or null if none was
+     */
+    public synchronized BluetoothConnection evictForNewConnection() {
+        if (connections.size() < maxConnections) {
+            return null;
+        }
+        for (BluetoothConnection connection : connections.values()) {
+            if (connection.isIdle() && !connection.isKeepAlive() && !connection.isHeld()) {
+                connections.remove(connection.getAddress());
+                return connection;
+            }
+        }
+        return null;
+    }
+
+    public synchronized boolean hasRoom() {
+        return connections.size() < maxConnections;
+    }
+
+    public synchronized List<BluetoothConnection> removeAll() {
+        List<BluetoothConnection> all = new ArrayList<>(connections.values());
+        connections.clear();
+        return all;
+    }
+
+    public synchronized List<BluetoothConnection> snapshot() {
+        return new ArrayList<>(connections.values());
+    }
+
+    public synchronized int size() {
+        return connections.size();
+    }
+}
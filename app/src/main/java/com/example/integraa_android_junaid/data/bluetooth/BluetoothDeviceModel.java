@@ -6,6 +6,8 @@ public class BluetoothDeviceModel {
     private String name;
     private String address;
     private BluetoothDevice device;
+    // Smoothed signal strength from the scan, 0 if unknown (paired devices)
+    private int rssi;
 
     public BluetoothDeviceModel(String name, String address, BluetoothDevice device) {
         this.name = name;
@@ -43,5 +45,13 @@ public class BluetoothDeviceModel {
     public void setDevice(BluetoothDevice device) {
         this.device = device;
     }
+
+    public int getRssi() {
+        return rssi;
+    }
+
+    public void setRssi(int rssi) {
+        this.rssi = rssi;
+    }
 }
 
@@ -2,10 +2,6 @@ package com.example.integraa_android_junaid.data.bluetooth;
 
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattService;
-import android.bluetooth.BluetoothProfile;
 import android.bluetooth.le.BluetoothLeScanner;
 import android.bluetooth.le.ScanCallback;
 import android.bluetooth.le.ScanFilter;
@@ -16,39 +12,85 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.ParcelUuid;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
 
+import com.example.integraa_android_junaid.data.local.KnownDeviceRegistry;
+import com.example.integraa_android_junaid.util.HexCodec;
 import com.example.integraa_android_junaid.util.PermissionHelper;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BluetoothManager {
     private static final String TAG = "BluetoothManager";
-    private static final UUID SERVICE_UUID = UUID.fromString("0000ffe0-0000-1000-8000-00805f9b34fb");
-    private static final UUID CHARACTERISTIC_UUID = UUID.fromString("0000ffe1-0000-1000-8000-00805f9b34fb");
 
     private final Context context;
     private BluetoothAdapter bluetoothAdapter;
-    private BluetoothGatt bluetoothGatt;
-    private BluetoothDevice connectedDevice;
     private BluetoothLeScanner bluetoothLeScanner;
     private BluetoothScanCallback scanCallback;
-    private Set<String> scannedDeviceAddresses = new HashSet<>();
+    // The callback the running scan was started with; stopScan needs the same instance
+    private ScanCallback leScanCallback;
+    private List<ScanFilter> scanFilters = new ArrayList<>();
+    private final ArrayDeque<Long> scanStarts = new ArrayDeque<>();
+    // Kept across scans so jobs can order meters by distance
+    private final ScanResultStore scanResults = new ScanResultStore();
+    private boolean publishScheduled = false;
+    private long lastPublishedAt = 0;
+    // Scan callbacks arrive on the main thread and scan results are published from there
     private Handler mainHandler = new Handler(Looper.getMainLooper());
+    // GATT callbacks, operation queues, reply timers and frame building run here, so a busy
+    // or stalled main thread (activity recreation, screen off) doesn't hold up the links
+    private final HandlerThread gattThread = new HandlerThread("BluetoothGatt", Process.THREAD_PRIORITY_FOREGROUND);
+    private final Handler gattHandler;
+    private final Executor gattExecutor;
     private static final long SCAN_DURATION_MS = 10000; // 10 seconds
-    private static final long CONNECTION_TIMEOUT_MS = 15000; // 15 seconds
-    private Handler connectionTimeoutHandler;
-    private BluetoothGattCallback currentConnectionCallback;
+    private static final long FAST_SCAN_MS = 3000; // Low latency, then balanced
+    private static final long SCAN_REPORT_DELAY_MS = 500; // Hardware batching, where supported
+    static final long SCAN_PUBLISH_INTERVAL_MS = 250;
+    private static final long SCAN_START_WINDOW_MS = 30000;
+    private static final int MAX_SCAN_STARTS_PER_WINDOW = 5;
+    private static final int MAX_POOLED_CONNECTIONS = 4; // Stay well below the controller's link limit
+    private final BluetoothConnectionPool connectionPool = new BluetoothConnectionPool(MAX_POOLED_CONNECTIONS);
+    private final ReconnectPolicy reconnectPolicy = ReconnectPolicy.defaultPolicy();
+    private final ConnectionMetrics connectionMetrics = new ConnectionMetrics(reconnectPolicy.getMaxAttempts());
+    private final LinkThroughput linkThroughput = new LinkThroughput();
+    private final FrameValidator frameValidator;
+    private final KnownDeviceRegistry knownDevices;
+    // Device targeted by the single-device API (connectToDevice / sendHexPayload without address)
+    private volatile String activeAddress;
+    private final MutableLiveData<ConnectionState> connectionState = new MutableLiveData<>(ConnectionState.IDLE);
+    private ConnectionState publishedState = ConnectionState.IDLE;
+    // Sends and requests not completed yet, per device
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    // When each device last went from idle to having a frame in flight
+    private final Map<String, Long> busySince = new ConcurrentHashMap<>();
 
-    public BluetoothManager(Context context) {
+    /**
+     * @param frameValidator Recognizes a complete, intact reply frame in the notification stream
+     * @param knownDevices What earlier connections learned about each meter
+     */
+    public BluetoothManager(Context context, FrameValidator frameValidator, KnownDeviceRegistry knownDevices) {
         this.context = context;
+        this.frameValidator = frameValidator;
+        this.knownDevices = knownDevices;
+        gattThread.start();
+        this.gattHandler = new Handler(gattThread.getLooper());
+        this.gattExecutor = gattHandler::post;
         try {
             android.bluetooth.BluetoothManager bluetoothManager = (android.bluetooth.BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
             if (bluetoothManager != null) {
@@ -81,6 +123,32 @@ public class BluetoothManager {
         }
     }
 
+    /**
+     * Meters this app connected to before, most recent first. Read from the registry, so
+     * no scan or bonded-device lookup is needed; {@link #acquireConnection} connects to
+     * them directly by address.
+     */
+    public List<BluetoothDeviceModel> getKnownDevices() {
+        List<BluetoothDeviceModel> devices = new ArrayList<>();
+        for (KnownDeviceRegistry.KnownDevice known : knownDevices.getAll()) {
+            BluetoothDeviceModel device = new BluetoothDeviceModel(displayName(known.getName(), known.getAddress()),
+                    known.getAddress(), null);
+            if (known.getRssi() != null) {
+                device.setRssi(known.getRssi());
+            }
+            devices.add(device);
+        }
+        return devices;
+    }
+
+    /**
+     * Name to list a device under; devices that don't advertise one show their address.
+     */
+    static String displayName(String name, String address) {
+        // Format MAC address for display (e.g., "Device (AA:BB:CC:DD:EE:FF)")
+        return name != null && !name.isEmpty() ? name : "Device (" + address + ")";
+    }
+
     public List<BluetoothDeviceModel> getPairedDevices() {
         List<BluetoothDeviceModel> devices = new ArrayList<>();
         
@@ -109,11 +177,7 @@ public class BluetoothManager {
                         }
                         
                         if (address != null && !address.isEmpty()) {
-                            // If name is null or empty, use address as fallback
-                            if (name == null || name.isEmpty()) {
-                                name = "Device (" + address + ")";
-                            }
-                            devices.add(new BluetoothDeviceModel(name, address, device));
+                            devices.add(new BluetoothDeviceModel(displayName(name, address), address, device));
                         }
                     } catch (Exception e) {
                         Log.w(TAG, "Error processing device", e);
@@ -133,6 +197,11 @@ public class BluetoothManager {
         return PermissionHelper.hasBluetoothPermissions(context);
     }
 
+    /**
+     * Connect to a device and make it the active one. An existing pooled link to the same
+     * device is reused as-is; links to other devices stay open until they idle out or
+     * are evicted to make room.
+     */
     public void connectToDevice(BluetoothDevice device, BluetoothGattCallback callback) {
         if (bluetoothAdapter == null || device == null) {
             if (callback != null) {
@@ -141,69 +210,122 @@ public class BluetoothManager {
             return;
         }
 
-        // Disconnect existing connection if any
-        if (bluetoothGatt != null) {
-            disconnect();
-        }
-
-        // Cancel any existing connection timeout
-        cancelConnectionTimeout();
+        activeAddress = device.getAddress();
+        openConnection(device, callback);
+        publishConnectionState();
+    }
 
-        // Store callback for timeout handling
-        currentConnectionCallback = callback;
+    /**
+     * Open (or reuse) a pooled link without changing the active device, so callers can
+     * talk to several meters at once through {@link #sendHexPayload(String, String, WriteMode, SendCallback)}.
+     * A link that is already open keeps its other listeners; hand it back with
+     * {@link #releaseConnection(String, BluetoothGattCallback)} when done.
+     */
+    public void acquireConnection(String address, BluetoothGattCallback callback) {
+        if (bluetoothAdapter == null || address == null || address.isEmpty()) {
+            if (callback != null) {
+                callback.onConnectionFailed("Invalid device address");
+            }
+            return;
+        }
+        try {
+            openConnection(bluetoothAdapter.getRemoteDevice(address), callback);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Permission denied getting remote device", e);
+            if (callback != null) {
+                callback.onConnectionFailed("Permission denied");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting remote device", e);
+            if (callback != null) {
+                callback.onConnectionFailed("Error: " + e.getMessage());
+            }
+        }
+    }
 
-        // Set BluetoothManager reference in callback
-        if (callback != null) {
-            callback.setBluetoothManager(this);
+    private void openConnection(BluetoothDevice device, BluetoothGattCallback callback) {
+        String address = device.getAddress();
+        BluetoothConnection existing = connectionPool.get(address);
+        if (existing != null && existing.getState() != BluetoothConnection.State.DISCONNECTED) {
+            existing.addListener(callback);
+            existing.touch();
+            if (existing.isReady() && callback != null) {
+                Log.d(TAG, "Reusing pooled connection to " + address);
+                // Callbacks fire on the GATT thread, as they do for a fresh connection
+                gattHandler.post(() -> {
+                    callback.onConnected();
+                    callback.onServicesDiscovered();
+                });
+            }
+            return;
         }
 
-        try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                bluetoothGatt = device.connectGatt(context, false, callback);
-            } else {
-                bluetoothGatt = device.connectGatt(context, false, callback);
+        BluetoothConnection evicted = connectionPool.evictForNewConnection();
+        if (evicted != null) {
+            Log.d(TAG, "Connection pool full, closing least recently used link to " + evicted.getAddress());
+            evicted.dropLink();
+        }
+        if (!connectionPool.hasRoom()) {
+            Log.w(TAG, "Connection pool full of links in use, not connecting to " + address);
+            if (callback != null) {
+                callback.onConnectionFailed("All Bluetooth links are in use. Please try again when the running jobs finish.");
             }
-            connectedDevice = device;
-            Log.d(TAG, "Connecting to device: " + device.getAddress());
+            return;
+        }
 
-            // Start connection timeout
-            startConnectionTimeout(callback);
+        BluetoothConnection connection = new BluetoothConnection(context, device, gattHandler, connectionObserver,
+                reconnectPolicy, connectionMetrics, frameValidator, knownDevices);
+        connection.addListener(callback);
+        connectionPool.put(connection);
+
+        try {
+            connection.connect();
         } catch (SecurityException e) {
             Log.e(TAG, "Permission denied connecting to device", e);
-            cancelConnectionTimeout();
+            connection.close();
+            connectionPool.remove(connection);
             if (callback != null) {
                 callback.onConnectionFailed("Permission denied");
             }
         } catch (Exception e) {
             Log.e(TAG, "Error connecting to device", e);
-            cancelConnectionTimeout();
+            connection.close();
+            connectionPool.remove(connection);
             if (callback != null) {
                 callback.onConnectionFailed("Connection error: " + e.getMessage());
             }
         }
     }
 
-    private void startConnectionTimeout(BluetoothGattCallback callback) {
-        cancelConnectionTimeout();
-        connectionTimeoutHandler = new Handler(Looper.getMainLooper());
-        connectionTimeoutHandler.postDelayed(() -> {
-            if (bluetoothGatt != null && !isConnected()) {
-                Log.w(TAG, "Connection timeout - disconnecting");
-                disconnect();
-                if (callback != null) {
-                    callback.onConnectionFailed("Connection timeout. Device may be out of range or not responding.");
+    private final BluetoothConnection.Observer connectionObserver = new BluetoothConnection.Observer() {
+        @Override
+        public void onStateChanged(BluetoothConnection connection) {
+            String address = connection.getAddress();
+            if (connection.isReady()) {
+                // Keep the name the meter advertised with the registry entry the link just wrote
+                Integer rssi = scanResults.getRssi(address);
+                if (rssi != null) {
+                    knownDevices.recordSeen(address, scanResults.getName(address), rssi);
                 }
-                currentConnectionCallback = null;
             }
-        }, CONNECTION_TIMEOUT_MS);
-    }
+            if (address.equals(activeAddress)) {
+                publishConnectionState();
+            }
+        }
 
-    private void cancelConnectionTimeout() {
-        if (connectionTimeoutHandler != null) {
-            connectionTimeoutHandler.removeCallbacksAndMessages(null);
-            connectionTimeoutHandler = null;
+        @Override
+        public void onConnectionClosed(BluetoothConnection connection) {
+            connectionPool.remove(connection);
         }
-    }
+
+        @Override
+        public void onConnectionIdle(BluetoothConnection connection) {
+            if (connectionPool.remove(connection)) {
+                Log.d(TAG, "Releasing idle connection to " + connection.getAddress());
+                connection.close();
+            }
+        }
+    };
 
     public void connectToDeviceByAddress(String address, BluetoothGattCallback callback) {
         if (bluetoothAdapter == null || address == null || address.isEmpty()) {
@@ -229,86 +351,272 @@ public class BluetoothManager {
         }
     }
 
+    /**
+     * Disconnect the active device. Other pooled links are left open.
+     */
     public void disconnect() {
-        cancelConnectionTimeout();
-        if (bluetoothGatt != null) {
-            try {
-                bluetoothGatt.disconnect();
-                bluetoothGatt.close();
-            } catch (Exception e) {
-                Log.e(TAG, "Error disconnecting", e);
-            }
-            bluetoothGatt = null;
+        disconnect(activeAddress);
+        activeAddress = null;
+        publishConnectionState();
+    }
+
+    public void disconnect(String address) {
+        BluetoothConnection connection = connectionPool.get(address);
+        if (connection != null) {
+            connectionPool.remove(connection);
+            connection.close();
         }
-        connectedDevice = null;
-        currentConnectionCallback = null;
     }
 
     /**
-     * Send hex payload to connected Bluetooth device
+     * Stop listening to a link opened with {@link #acquireConnection}. The link is closed
+     * (freeing its pool slot) unless someone else still listens to it or the session keeps
+     * it alive; requests still in flight on a closed link fail.
+     */
+    public void releaseConnection(String address, BluetoothGattCallback callback) {
+        BluetoothConnection connection = connectionPool.get(address);
+        if (connection == null || connection.removeListener(callback) || connection.isKeepAlive()) {
+            return;
+        }
+        if (connectionPool.remove(connection)) {
+            Log.d(TAG, "Releasing unused connection to " + address);
+            connection.close();
+        }
+    }
+
+    public void disconnectAll() {
+        for (BluetoothConnection connection : connectionPool.removeAll()) {
+            connection.close();
+        }
+        activeAddress = null;
+        publishConnectionState();
+    }
+
+    /**
+     * Send hex payload to the active Bluetooth device.
+     * The write is queued behind any outstanding GATT operation and the callback fires
+     * only once onCharacteristicWrite arrives (or the operation fails / times out).
      * @param hexPayload Hex string payload to send
-     * @return Result object with success status and error message
+     * @param callback Receives the result, including the end-to-end write latency
+     */
+    public void sendHexPayload(String hexPayload, SendCallback callback) {
+        sendHexPayload(activeAddress, hexPayload, WriteMode.ACKNOWLEDGED, callback);
+    }
+
+    public void sendHexPayload(String hexPayload, WriteMode writeMode, SendCallback callback) {
+        sendHexPayload(activeAddress, hexPayload, writeMode, callback);
+    }
+
+    /**
+     * Send hex payload to a specific pooled device using the given write mode.
+     * Each device has its own operation queue, so sends to different meters run concurrently.
+     * In {@link WriteMode#PIPELINED} mode the frame's fragments are written without response
+     * and queued together, so callers can fire many frames back-to-back; the callback fires
+     * once the controller accepted the last fragment. Falls back to acknowledged writes if
+     * the characteristic does not support write-without-response.
+     */
+    public void sendHexPayload(String address, String hexPayload, WriteMode writeMode, SendCallback callback) {
+        send(address, hexPayload, writeMode, false, callback);
+    }
+
+    /**
+     * Send a request and complete once the device's reply arrived, rather than on the write
+     * acknowledgement. The result carries the reply frame (checksum already verified) and the
+     * round-trip latency. On meters that don't offer notifications the write acknowledgement
+     * is all there is, so the callback fires on that with no reply attached.
+     */
+    public void sendRequest(String address, String hexPayload, WriteMode writeMode, SendCallback callback) {
+        send(address, hexPayload, writeMode, true, callback);
+    }
+
+    /**
+     * Send a frame that is already in binary form, skipping hex validation and parsing.
+     * The array must not be modified until the callback fired.
+     */
+    public void sendFrame(String address, byte[] frame, WriteMode writeMode, SendCallback callback) {
+        sendFrame(address, frame, writeMode, false, SystemClock.elapsedRealtime(), callback);
+    }
+
+    /**
+     * Binary counterpart of {@link #sendRequest(String, String, WriteMode, SendCallback)}.
      */
-    public SendResult sendHexPayload(String hexPayload) {
+    public void sendRequest(String address, byte[] frame, WriteMode writeMode, SendCallback callback) {
+        sendFrame(address, frame, writeMode, true, SystemClock.elapsedRealtime(), callback);
+    }
+
+    private void send(String address, String hexPayload, WriteMode writeMode, boolean awaitReply, SendCallback callback) {
+        long requestedAt = SystemClock.elapsedRealtime();
         if (hexPayload == null || hexPayload.isEmpty()) {
-            return new SendResult(false, "Payload is empty");
+            callback.onComplete(new SendResult(false, "Payload is empty"));
+            return;
         }
 
         // Validate hex payload format
         if (!isValidHexString(hexPayload)) {
-            return new SendResult(false, "Invalid hex payload format");
-        }
-
-        if (bluetoothGatt == null) {
-            Log.e(TAG, "Bluetooth GATT not connected");
-            return new SendResult(false, "Bluetooth device not connected");
+            callback.onComplete(new SendResult(false, "Invalid hex payload format"));
+            return;
         }
 
+        byte[] bytes;
         try {
             // Convert hex string to byte array
-            byte[] bytes = hexStringToByteArray(hexPayload);
-            if (bytes == null || bytes.length == 0) {
-                return new SendResult(false, "Failed to convert hex payload to bytes");
-            }
-
-            BluetoothGattService service = bluetoothGatt.getService(SERVICE_UUID);
-            if (service == null) {
-                Log.e(TAG, "Service not found: " + SERVICE_UUID);
-                return new SendResult(false, "Bluetooth service not found. Device may not support required service.");
-            }
+            bytes = hexStringToByteArray(hexPayload);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid hex payload", e);
+            callback.onComplete(new SendResult(false, "Invalid hex payload format: " + e.getMessage()));
+            return;
+        }
+        if (bytes == null || bytes.length == 0) {
+            callback.onComplete(new SendResult(false, "Failed to convert hex payload to bytes"));
+            return;
+        }
+        sendFrame(address, bytes, writeMode, awaitReply, requestedAt, callback);
+    }
 
-            BluetoothGattCharacteristic characteristic = service.getCharacteristic(CHARACTERISTIC_UUID);
-            if (characteristic == null) {
-                Log.e(TAG, "Characteristic not found: " + CHARACTERISTIC_UUID);
-                return new SendResult(false, "Bluetooth characteristic not found. Device may not support required characteristic.");
-            }
+    private void sendFrame(String address, byte[] frame, WriteMode writeMode, boolean awaitReply,
+                           long requestedAt, SendCallback callback) {
+        if (frame == null || frame.length == 0) {
+            callback.onComplete(new SendResult(false, "Payload is empty"));
+            return;
+        }
 
-            // Check if characteristic supports write
-            int properties = characteristic.getProperties();
-            if ((properties & BluetoothGattCharacteristic.PROPERTY_WRITE) == 0 &&
-                (properties & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) == 0) {
-                return new SendResult(false, "Characteristic does not support write operations");
-            }
+        BluetoothConnection connection = connectionPool.get(address);
+        if (connection == null) {
+            Log.e(TAG, "Bluetooth GATT not connected");
+            callback.onComplete(new SendResult(false, "Bluetooth device not connected"));
+            return;
+        }
+        callback = trackInFlight(address, frame.length, callback);
 
-            characteristic.setValue(bytes);
-            boolean success = bluetoothGatt.writeCharacteristic(characteristic);
-            if (success) {
-                Log.d(TAG, "Payload sent successfully: " + hexPayload);
-                return new SendResult(true, null);
+        try {
+            if (awaitReply) {
+                connection.request(frame, writeMode, requestedAt, callback);
             } else {
-                Log.e(TAG, "Failed to write characteristic");
-                return new SendResult(false, "Failed to write to Bluetooth device. Device may be out of range or disconnected.");
+                connection.send(frame, writeMode, requestedAt, callback);
             }
         } catch (SecurityException e) {
             Log.e(TAG, "Permission denied sending payload", e);
-            return new SendResult(false, "Bluetooth permission denied");
-        } catch (IllegalArgumentException e) {
-            Log.e(TAG, "Invalid hex payload", e);
-            return new SendResult(false, "Invalid hex payload format: " + e.getMessage());
+            callback.onComplete(new SendResult(false, "Bluetooth permission denied"));
         } catch (Exception e) {
             Log.e(TAG, "Error sending payload", e);
-            return new SendResult(false, "Error sending payload: " + e.getMessage());
+            callback.onComplete(new SendResult(false, "Error sending payload: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Count the send as in flight until it completes, so the active device shows as busy,
+     * and account its bytes and busy time to the link's current profile.
+     */
+    private SendCallback trackInFlight(String address, int frameLength, SendCallback callback) {
+        AtomicInteger count = inFlight.computeIfAbsent(address, a -> new AtomicInteger());
+        if (count.getAndIncrement() == 0) {
+            busySince.put(address, SystemClock.elapsedRealtime());
+            if (address.equals(activeAddress)) {
+                publishConnectionState();
+            }
         }
+        return result -> {
+            LinkProfile profile = getLinkProfile(address);
+            if (result.isSuccess()) {
+                byte[] response = result.getResponse();
+                linkThroughput.recordFrame(profile, frameLength + (response != null ? response.length : 0));
+            }
+            if (count.decrementAndGet() == 0) {
+                Long since = busySince.remove(address);
+                if (since != null) {
+                    linkThroughput.recordBusy(profile, SystemClock.elapsedRealtime() - since);
+                }
+                if (address.equals(activeAddress)) {
+                    publishConnectionState();
+                }
+            }
+            callback.onComplete(result);
+        };
+    }
+
+    /**
+     * Runs tasks on the thread that does all GATT I/O, in order. Lets callers build frames
+     * and start sends without touching the main thread; results come back on this thread too.
+     */
+    public Executor getGattExecutor() {
+        return gattExecutor;
+    }
+
+    Handler getGattHandler() {
+        return gattHandler;
+    }
+
+    /**
+     * The active device's link as it changes: scanning, connecting, discovering, ready,
+     * busy or disconnected. Updated from the events themselves, so there is nothing to poll.
+     */
+    public LiveData<ConnectionState> getConnectionState() {
+        return connectionState;
+    }
+
+    private synchronized void publishConnectionState() {
+        String address = activeAddress;
+        ConnectionState state;
+        if (address == null) {
+            state = leScanCallback != null ? ConnectionState.SCANNING : ConnectionState.IDLE;
+        } else {
+            BluetoothConnection connection = connectionPool.get(address);
+            BluetoothConnection.State linkState = connection != null ? connection.getState() : BluetoothConnection.State.DISCONNECTED;
+            ConnectionState.Phase phase;
+            int mtu = 0;
+            switch (linkState) {
+                case CONNECTING:
+                    phase = ConnectionState.Phase.CONNECTING;
+                    break;
+                case DISCOVERING:
+                    phase = ConnectionState.Phase.DISCOVERING;
+                    break;
+                case READY:
+                    AtomicInteger count = inFlight.get(address);
+                    phase = count != null && count.get() > 0 ? ConnectionState.Phase.BUSY : ConnectionState.Phase.READY;
+                    mtu = connection.getMtu();
+                    break;
+                default:
+                    phase = ConnectionState.Phase.DISCONNECTED;
+                    break;
+            }
+            state = new ConnectionState(phase, address, deviceNameOf(address), mtu);
+        }
+        if (!state.equals(publishedState)) {
+            publishedState = state;
+            connectionState.postValue(state);
+        }
+    }
+
+    private String deviceNameOf(String address) {
+        String name = scanResults.getName(address);
+        if (name == null) {
+            KnownDeviceRegistry.KnownDevice known = knownDevices.get(address);
+            name = known != null ? known.getName() : null;
+        }
+        return name;
+    }
+
+    /**
+     * Bytes per second achieved with each link profile, over all connections.
+     */
+    public LinkThroughput getLinkThroughput() {
+        return linkThroughput;
+    }
+
+    /**
+     * Attempts-to-success statistics for all connections opened by this manager.
+     */
+    public ConnectionMetrics getConnectionMetrics() {
+        return connectionMetrics;
+    }
+
+    /**
+     * Negotiated ATT MTU for the active device, or the BLE default if none was negotiated yet
+     */
+    public int getCurrentMtu() {
+        BluetoothConnection connection = connectionPool.get(activeAddress);
+        return connection != null ? connection.getMtu() : 23;
     }
 
     /**
@@ -318,51 +626,195 @@ public class BluetoothManager {
         if (hex == null || hex.isEmpty()) {
             return false;
         }
-        // Remove whitespace and check if all characters are valid hex
-        hex = hex.replaceAll("\\s", "");
-        return hex.matches("^[0-9A-Fa-f]+$") && hex.length() % 2 == 0;
+        // Whitespace is allowed, everything else must be whole hex bytes
+        return HexCodec.isValid(hex);
     }
 
     /**
      * Result class for sendHexPayload operation
      */
     public static class SendResult {
+        /**
+         * Why a send failed
+         */
+        public enum Failure {
+            /**
+             * The frame never fully reached the meter (link down, write failed); sending it
+             * again is safe
+             */
+            NOT_WRITTEN,
+            /**
+             * The frame was written but no reply came; the meter may have acted on it
+             */
+            NO_REPLY
+        }
+
         private final boolean success;
+        private final Failure failure;
         private final String errorMessage;
+        private final long latencyMs;
+        private final byte[] response;
 
         public SendResult(boolean success, String errorMessage) {
+            this(success, errorMessage, 0);
+        }
+
+        public SendResult(boolean success, String errorMessage, long latencyMs) {
+            this(success, errorMessage, latencyMs, null);
+        }
+
+        public SendResult(boolean success, String errorMessage, long latencyMs, byte[] response) {
+            this(success, success ? null : Failure.NOT_WRITTEN, errorMessage, latencyMs, response);
+        }
+
+        public SendResult(Failure failure, String errorMessage, long latencyMs) {
+            this(false, failure, errorMessage, latencyMs, null);
+        }
+
+        private SendResult(boolean success, Failure failure, String errorMessage, long latencyMs, byte[] response) {
             this.success = success;
+            this.failure = failure;
             this.errorMessage = errorMessage;
+            this.latencyMs = latencyMs;
+            this.response = response;
         }
 
         public boolean isSuccess() {
             return success;
         }
 
+        /**
+         * @return Why the send failed, or null if it succeeded
+         */
+        public Failure getFailure() {
+            return failure;
+        }
+
         public String getErrorMessage() {
             return errorMessage;
         }
+
+        /**
+         * Time from the send request until the device acknowledged the write,
+         * or until its reply arrived for {@link #sendRequest} calls
+         */
+        public long getLatencyMs() {
+            return latencyMs;
+        }
+
+        /**
+         * The device's reply frame, or null if none was awaited or the meter can't notify
+         */
+        public byte[] getResponse() {
+            return response;
+        }
+    }
+
+    public interface SendCallback {
+        void onComplete(SendResult result);
     }
 
     private byte[] hexStringToByteArray(String hex) {
-        int len = hex.length();
-        byte[] data = new byte[len / 2];
-        for (int i = 0; i < len; i += 2) {
-            data[i / 2] = (byte) ((Character.digit(hex.charAt(i), 16) << 4)
-                    + Character.digit(hex.charAt(i + 1), 16));
-        }
-        return data;
+        return HexCodec.decode(hex);
     }
 
     public boolean isConnected() {
-        return bluetoothGatt != null && connectedDevice != null;
+        return isConnected(activeAddress);
+    }
+
+    public boolean isConnected(String address) {
+        BluetoothConnection connection = connectionPool.get(address);
+        return connection != null && connection.isReady();
     }
 
     public BluetoothDevice getConnectedDevice() {
-        return connectedDevice;
+        BluetoothConnection connection = connectionPool.get(activeAddress);
+        return connection != null && connection.isReady() ? connection.getDevice() : null;
+    }
+
+    /**
+     * Keep a pooled link open even when no traffic flows over it.
+     */
+    public void setKeepAlive(String address, boolean keepAlive) {
+        BluetoothConnection connection = connectionPool.get(address);
+        if (connection != null) {
+            connection.setKeepAlive(keepAlive);
+        }
+    }
+
+    /**
+     * @param priority One of BluetoothGatt.CONNECTION_PRIORITY_*
+     * @return true if the request was handed to the stack
+     */
+    public boolean requestConnectionPriority(String address, int priority) {
+        BluetoothConnection connection = connectionPool.get(address);
+        return connection != null && connection.requestConnectionPriority(priority);
+    }
+
+    /**
+     * Tune the pooled link to the device for the kind of traffic that follows. The profile
+     * sticks to the link across reconnects until it is switched again.
+     */
+    public void setLinkProfile(String address, LinkProfile profile) {
+        BluetoothConnection connection = connectionPool.get(address);
+        if (connection == null || connection.getLinkProfile() == profile) {
+            return;
+        }
+        Log.d(TAG, address + ": " + connection.getLinkProfile() + " -> " + profile + ", " + linkThroughput);
+        connection.setLinkProfile(profile, supportsLe2mPhy());
+    }
+
+    /**
+     * Profile of the pooled link to the device; {@link LinkProfile#INTERACTIVE} if there is none.
+     */
+    public LinkProfile getLinkProfile(String address) {
+        BluetoothConnection connection = address != null ? connectionPool.get(address) : null;
+        return connection != null ? connection.getLinkProfile() : LinkProfile.INTERACTIVE;
+    }
+
+    private boolean supportsLe2mPhy() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && bluetoothAdapter != null
+                && bluetoothAdapter.isLe2MPhySupported();
+    }
+
+    /**
+     * Addresses of all links currently held in the pool
+     */
+    public List<String> getPooledAddresses() {
+        List<String> addresses = new ArrayList<>();
+        for (BluetoothConnection connection : connectionPool.snapshot()) {
+            addresses.add(connection.getAddress());
+        }
+        return addresses;
+    }
+
+    /**
+     * Smoothed signal strength from the latest scan that saw the device, or what it was
+     * when a scan last saw the meter before the app restarted; null if never seen.
+     */
+    public Integer getLastRssi(String address) {
+        Integer rssi = scanResults.getRssi(address);
+        if (rssi == null) {
+            KnownDeviceRegistry.KnownDevice known = knownDevices.get(address);
+            rssi = known != null ? known.getRssi() : null;
+        }
+        return rssi;
     }
 
     public void startScanning(BluetoothScanCallback callback) {
+        startScanning(callback, true);
+    }
+
+    /**
+     * Scan for nearby devices for {@link #SCAN_DURATION_MS}. The devices seen so far are
+     * republished, strongest first, at most every {@link #SCAN_PUBLISH_INTERVAL_MS}.
+     * The scan starts in low-latency mode so nearby meters show up at once, then drops to
+     * balanced mode. Where the controller supports it, results are batched in hardware and
+     * delivered every {@link #SCAN_REPORT_DELAY_MS}.
+     * @param metersOnly Let the controller drop everything that doesn't advertise the meter
+     *                   service; false lists all devices in range
+     */
+    public void startScanning(BluetoothScanCallback callback, boolean metersOnly) {
         if (!hasBluetoothPermissions()) {
             Log.w(TAG, "Bluetooth permissions not granted for scanning");
             if (callback != null) {
@@ -402,73 +854,27 @@ public class BluetoothManager {
         // Stop any existing scan
         stopScanning();
 
-        scannedDeviceAddresses.clear();
+        scanResults.beginScan();
+        lastPublishedAt = 0;
         this.scanCallback = callback;
 
         try {
-            ScanSettings scanSettings = new ScanSettings.Builder()
-                    .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
-                    .build();
-
-            List<ScanFilter> scanFilters = new ArrayList<>(); // No filters - scan all devices
-
-            bluetoothLeScanner.startScan(scanFilters, scanSettings, new ScanCallback() {
+            scanFilters = new ArrayList<>();
+            if (metersOnly) {
+                scanFilters.add(new ScanFilter.Builder()
+                        .setServiceUuid(new ParcelUuid(BluetoothConnection.SERVICE_UUID))
+                        .build());
+            }
+            leScanCallback = new ScanCallback() {
                 @Override
                 public void onScanResult(int callbackType, ScanResult result) {
-                    if (result != null && result.getDevice() != null) {
-                        BluetoothDevice device = result.getDevice();
-                        String address = device.getAddress();
-                        
-                        // Avoid duplicates
-                        if (!scannedDeviceAddresses.contains(address)) {
-                            scannedDeviceAddresses.add(address);
-                            try {
-                                String name = null;
-                                
-                                // Try to get name from device first
-                                try {
-                                    name = device.getName();
-                                } catch (SecurityException e) {
-                                    Log.w(TAG, "Permission denied getting device name", e);
-                                }
-                                
-                                // If name is null, try to get it from ScanRecord
-                                if ((name == null || name.isEmpty()) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                                    try {
-                                        android.bluetooth.le.ScanRecord scanRecord = result.getScanRecord();
-                                        if (scanRecord != null) {
-                                            String deviceName = scanRecord.getDeviceName();
-                                            if (deviceName != null && !deviceName.isEmpty()) {
-                                                name = deviceName;
-                                            }
-                                        }
-                                    } catch (Exception e) {
-                                        Log.w(TAG, "Error getting name from scan record", e);
-                                    }
-                                }
-                                
-                                // If still no name, use a descriptive fallback with MAC address
-                                if (name == null || name.isEmpty()) {
-                                    // Format MAC address for display (e.g., "Device (AA:BB:CC:DD:EE:FF)")
-                                    name = "Device (" + address + ")";
-                                }
-                                
-                                BluetoothDeviceModel deviceModel = new BluetoothDeviceModel(name, address, device);
-                                if (scanCallback != null) {
-                                    scanCallback.onDeviceFound(deviceModel);
-                                }
-                            } catch (SecurityException e) {
-                                Log.w(TAG, "Permission denied accessing device info", e);
-                                // Still create device model with address as name
-                                String fallbackName = "Device (" + address + ")";
-                                BluetoothDeviceModel deviceModel = new BluetoothDeviceModel(fallbackName, address, device);
-                                if (scanCallback != null) {
-                                    scanCallback.onDeviceFound(deviceModel);
-                                }
-                            } catch (Exception e) {
-                                Log.w(TAG, "Error processing scanned device", e);
-                            }
-                        }
+                    handleScanResult(result);
+                }
+
+                @Override
+                public void onBatchScanResults(List<ScanResult> results) {
+                    for (ScanResult result : results) {
+                        handleScanResult(result);
                     }
                 }
 
@@ -476,129 +882,165 @@ public class BluetoothManager {
                 public void onScanFailed(int errorCode) {
                     String error = "Scan failed with error code: " + errorCode;
                     Log.e(TAG, error);
-                    if (scanCallback != null) {
-                        scanCallback.onScanError(error);
+                    BluetoothScanCallback callback = scanCallback;
+                    stopScanning();
+                    if (callback != null) {
+                        callback.onScanError(error);
                     }
                 }
-            });
+            };
+            startLeScan(ScanSettings.SCAN_MODE_LOW_LATENCY);
 
+            // Drop to balanced once the closest meters had a chance to show up, unless
+            // restarting the scan would run into the system's scan start limit
+            mainHandler.postDelayed(scanDowngrade, FAST_SCAN_MS);
             // Auto-stop after scan duration
-            mainHandler.postDelayed(() -> {
-                stopScanning();
-                if (scanCallback != null) {
-                    scanCallback.onScanFinished();
-                }
-            }, SCAN_DURATION_MS);
+            mainHandler.postDelayed(scanTimeout, SCAN_DURATION_MS);
 
-            Log.d(TAG, "BLE scanning started");
+            publishConnectionState();
+            Log.d(TAG, "BLE scanning started" + (metersOnly ? " for meters" : ""));
         } catch (SecurityException e) {
             Log.e(TAG, "Bluetooth permission not granted for scanning", e);
+            leScanCallback = null;
             if (callback != null) {
                 callback.onScanError("Bluetooth permission not granted");
             }
         } catch (Exception e) {
             Log.e(TAG, "Error starting scan", e);
+            leScanCallback = null;
             if (callback != null) {
                 callback.onScanError("Error starting scan: " + e.getMessage());
             }
         }
     }
 
-    public void stopScanning() {
-        if (bluetoothLeScanner != null && scanCallback != null) {
-            try {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                    bluetoothLeScanner.stopScan(new ScanCallback() {
-                        @Override
-                        public void onScanResult(int callbackType, ScanResult result) {
-                            // Empty implementation
-                        }
+    private final Runnable scanDowngrade = () -> {
+        if (leScanCallback == null || !canStartScan()) {
+            return;
+        }
+        try {
+            bluetoothLeScanner.stopScan(leScanCallback);
+            startLeScan(ScanSettings.SCAN_MODE_BALANCED);
+            Log.d(TAG, "BLE scan switched to balanced mode");
+        } catch (SecurityException e) {
+            Log.e(TAG, "Bluetooth permission not granted for scanning", e);
+        }
+    };
 
-                        @Override
-                        public void onScanFailed(int errorCode) {
-                            // Empty implementation
-                        }
-                    });
-                }
-                Log.d(TAG, "BLE scanning stopped");
-            } catch (Exception e) {
-                Log.e(TAG, "Error stopping scan", e);
+    private final Runnable scanTimeout = () -> {
+        BluetoothScanCallback callback = scanCallback;
+        boolean pending = publishScheduled;
+        stopScanning();
+        if (callback != null) {
+            if (pending) {
+                callback.onDevicesUpdated(scanResults.snapshot());
             }
+            callback.onScanFinished();
         }
-        scanCallback = null;
-        scannedDeviceAddresses.clear();
+    };
+
+    private void startLeScan(int scanMode) {
+        ScanSettings.Builder settings = new ScanSettings.Builder().setScanMode(scanMode);
+        if (bluetoothAdapter.isOffloadedScanBatchingSupported()) {
+            settings.setReportDelay(SCAN_REPORT_DELAY_MS);
+        }
+        bluetoothLeScanner.startScan(scanFilters, settings.build(), leScanCallback);
+        scanStarts.addLast(SystemClock.elapsedRealtime());
     }
 
-    public interface BluetoothScanCallback {
-        void onDeviceFound(BluetoothDeviceModel device);
-        void onScanFinished();
-        void onScanError(String error);
+    /**
+     * Android ignores (without an error) a 6th scan start within 30 seconds.
+     */
+    private boolean canStartScan() {
+        long now = SystemClock.elapsedRealtime();
+        while (!scanStarts.isEmpty() && now - scanStarts.peekFirst() > SCAN_START_WINDOW_MS) {
+            scanStarts.removeFirst();
+        }
+        return scanStarts.size() < MAX_SCAN_STARTS_PER_WINDOW;
     }
 
-    public abstract static class BluetoothGattCallback extends android.bluetooth.BluetoothGattCallback {
-        private BluetoothManager bluetoothManager;
+    private void handleScanResult(ScanResult result) {
+        if (result == null || result.getDevice() == null) {
+            return;
+        }
+        BluetoothDevice device = result.getDevice();
+        String address = device.getAddress();
+        String name = null;
+        byte[] advertisement = null;
+        android.bluetooth.le.ScanRecord scanRecord = result.getScanRecord();
+        if (scanRecord != null) {
+            name = scanRecord.getDeviceName();
+            advertisement = scanRecord.getBytes();
+        }
+        if (name == null || name.isEmpty()) {
+            try {
+                name = device.getName();
+            } catch (SecurityException e) {
+                Log.w(TAG, "Permission denied getting device name", e);
+            }
+        }
+        if (name != null && name.isEmpty()) {
+            name = null;
+        }
+        scanResults.update(address, name, device, result.getRssi(), advertisement);
+        knownDevices.recordSeen(address, name, result.getRssi());
 
-        public void setBluetoothManager(BluetoothManager manager) {
-            this.bluetoothManager = manager;
+        if (!publishScheduled) {
+            publishScheduled = true;
+            long wait = lastPublishedAt + SCAN_PUBLISH_INTERVAL_MS - SystemClock.elapsedRealtime();
+            mainHandler.postDelayed(publishScanResults, Math.max(wait, 0));
         }
+    }
 
-        @Override
-        public void onConnectionStateChange(android.bluetooth.BluetoothGatt gatt, int status, int newState) {
-            if (newState == BluetoothProfile.STATE_CONNECTED) {
-                if (status == BluetoothGatt.GATT_SUCCESS) {
-                    // Cancel timeout on successful connection
-                    if (bluetoothManager != null) {
-                        bluetoothManager.cancelConnectionTimeout();
-                    }
-                    gatt.discoverServices();
-                    onConnected();
-                } else {
-                    // Connection failed
-                    if (bluetoothManager != null) {
-                        bluetoothManager.cancelConnectionTimeout();
-                    }
-                    String errorMsg = "Connection failed";
-                    if (status == 8) { // GATT_INTERNAL_ERROR
-                        errorMsg = "Connection failed: Internal error. Device may be out of range.";
-                    } else if (status == 19) { // GATT_CONN_TERMINATE_PEER_USER
-                        errorMsg = "Connection terminated by device";
-                    } else if (status == 22) { // GATT_CONN_TIMEOUT
-                        errorMsg = "Connection timeout. Device not responding.";
-                    } else if (status == 133) { // GATT_ERROR
-                        errorMsg = "Connection error. Please ensure device is powered on and in range.";
-                    }
-                    onConnectionFailed(errorMsg);
-                }
-            } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-                if (bluetoothManager != null) {
-                    bluetoothManager.cancelConnectionTimeout();
-                }
-                onDisconnected();
-            }
+    private final Runnable publishScanResults = () -> {
+        publishScheduled = false;
+        lastPublishedAt = SystemClock.elapsedRealtime();
+        BluetoothScanCallback callback = scanCallback;
+        if (callback != null) {
+            callback.onDevicesUpdated(scanResults.snapshot());
         }
+    };
 
-        @Override
-        public void onServicesDiscovered(android.bluetooth.BluetoothGatt gatt, int status) {
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                onServicesDiscovered();
-            } else {
-                if (bluetoothManager != null) {
-                    bluetoothManager.cancelConnectionTimeout();
-                }
-                String errorMsg = "Service discovery failed";
-                if (status == 8) {
-                    errorMsg = "Service discovery failed: Internal error";
-                } else if (status == 133) {
-                    errorMsg = "Service discovery failed: GATT error. Device may not support required services.";
-                }
-                onConnectionFailed(errorMsg);
+    public void stopScanning() {
+        mainHandler.removeCallbacks(scanDowngrade);
+        mainHandler.removeCallbacks(scanTimeout);
+        mainHandler.removeCallbacks(publishScanResults);
+        publishScheduled = false;
+        if (bluetoothLeScanner != null && leScanCallback != null) {
+            try {
+                // Must be the callback the scan was started with, or the scan keeps running
+                bluetoothLeScanner.stopScan(leScanCallback);
+                Log.d(TAG, "BLE scanning stopped");
+            } catch (Exception e) {
+                Log.e(TAG, "Error stopping scan", e);
             }
         }
+        boolean wasScanning = leScanCallback != null;
+        leScanCallback = null;
+        scanCallback = null;
+        if (wasScanning) {
+            publishConnectionState();
+        }
+    }
 
+    public interface BluetoothScanCallback {
+        /**
+         * Devices found so far in this scan, strongest signal first. Called on the main
+         * thread at most every {@link #SCAN_PUBLISH_INTERVAL_MS}, not per advertisement.
+         */
+        void onDevicesUpdated(List<BluetoothDeviceModel> devices);
+        void onScanFinished();
+        void onScanError(String error);
+    }
+
+    /**
+     * Connection events for a pooled device. GATT callbacks themselves are handled by
+     * {@link BluetoothConnection}; these fire on the GATT thread.
+     */
+    public abstract static class BluetoothGattCallback {
         public abstract void onConnected();
         public abstract void onDisconnected();
         public abstract void onServicesDiscovered();
         public abstract void onConnectionFailed(String error);
     }
 }
-
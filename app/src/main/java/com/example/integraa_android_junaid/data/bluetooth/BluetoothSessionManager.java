@@ -0,0 +1,306 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+import android.bluetooth.BluetoothGatt;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the link to the selected meter warm across command dialogs.
+ * The session connects as soon as a device is selected, keeps the pooled connection
+ * alive, holds sends issued while the link is still coming up and raises the
+ * connection priority only while commands are flowing. Held sends fail if the link isn't
+ * up within {@link #PENDING_SEND_TIMEOUT_MS}. A link left unused for
+ * {@link #LOW_POWER_IDLE_DELAY_MS} drops to the {@link LinkProfile#LOW_POWER} profile
+ * until the next send.
+ */
+public class BluetoothSessionManager {
+    private static final String TAG = "BluetoothSessionManager";
+    // Drop back to a balanced connection interval once commands stop for this long
+    private static final long PRIORITY_RELAX_DELAY_MS = 3000;
+    private static final long LOW_POWER_IDLE_DELAY_MS = 30000;
+    // A send held for a connecting link fails after this long; the link keeps trying to connect
+    private static final long PENDING_SEND_TIMEOUT_MS = 30000;
+
+    private final BluetoothManager bluetoothManager;
+    // The GATT thread, where the replies that drive the priority timer come in
+    private final Handler handler;
+    private final List<PendingSend> pendingSends = new ArrayList<>();
+    private String sessionAddress;
+    // Listens to the session link; one instance per session so reconnects don't stack listeners
+    private BluetoothManager.BluetoothGattCallback linkCallback;
+    private boolean connecting = false;
+    private boolean highPriority = false;
+    private final Runnable relaxPriority = this::relaxPriority;
+    private final Runnable enterLowPower = this::enterLowPower;
+
+    public BluetoothSessionManager(BluetoothManager bluetoothManager) {
+        this.bluetoothManager = bluetoothManager;
+        this.handler = bluetoothManager.getGattHandler();
+    }
+
+    /**
+     * Start (or keep) a session with the given device and connect in the background.
+     * Switching to another device ends the previous session.
+     */
+    public synchronized void startSession(String address) {
+        if (address == null || address.isEmpty()) {
+            return;
+        }
+        if (address.equals(sessionAddress) && (connecting || bluetoothManager.isConnected(address))) {
+            return;
+        }
+        if (sessionAddress != null && !address.equals(sessionAddress)) {
+            endSession();
+        }
+        sessionAddress = address;
+        connect();
+    }
+
+    /**
+     * End the session. Its link is closed unless another caller is still using it.
+     */
+    public synchronized void endSession() {
+        if (sessionAddress == null) {
+            return;
+        }
+        handler.removeCallbacks(relaxPriority);
+        handler.removeCallbacks(enterLowPower);
+        bluetoothManager.setKeepAlive(sessionAddress, false);
+        if (linkCallback != null) {
+            bluetoothManager.releaseConnection(sessionAddress, linkCallback);
+            linkCallback = null;
+        }
+        failPending("Session ended");
+        sessionAddress = null;
+        connecting = false;
+        highPriority = false;
+    }
+
+    public synchronized String getSessionAddress() {
+        return sessionAddress;
+    }
+
+    public synchronized boolean isSessionReady() {
+        return sessionAddress != null && bluetoothManager.isConnected(sessionAddress);
+    }
+
+    public void send(String hexPayload, BluetoothManager.SendCallback callback) {
+        send(hexPayload, WriteMode.ACKNOWLEDGED, callback);
+    }
+
+    /**
+     * Like {@link #send(String, BluetoothManager.SendCallback)}, but completes on the meter's
+     * reply; see {@link BluetoothManager#sendRequest}.
+     */
+    public void request(String hexPayload, BluetoothManager.SendCallback callback) {
+        submit((address, done) -> bluetoothManager.sendRequest(address, hexPayload, WriteMode.ACKNOWLEDGED, done), callback);
+    }
+
+    /**
+     * Binary counterpart of {@link #request(String, BluetoothManager.SendCallback)}.
+     */
+    public void request(byte[] frame, BluetoothManager.SendCallback callback) {
+        request(frame, WriteMode.ACKNOWLEDGED, callback);
+    }
+
+    /**
+     * Binary request with a choice of write mode, e.g. {@link WriteMode#PIPELINED} for scripts
+     * that keep several requests in flight.
+     */
+    public void request(byte[] frame, WriteMode writeMode, BluetoothManager.SendCallback callback) {
+        submit((address, done) -> bluetoothManager.sendRequest(address, frame, writeMode, done), callback);
+    }
+
+    /**
+     * Send over the session link. If the link is still connecting (or dropped), the send
+     * waits until the session is ready again and fails if the connection attempt fails.
+     */
+    public void send(String hexPayload, WriteMode writeMode, BluetoothManager.SendCallback callback) {
+        submit((address, done) -> bluetoothManager.sendHexPayload(address, hexPayload, writeMode, done), callback);
+    }
+
+    /**
+     * Binary counterpart of {@link #send(String, WriteMode, BluetoothManager.SendCallback)}.
+     */
+    public void sendFrame(byte[] frame, WriteMode writeMode, BluetoothManager.SendCallback callback) {
+        submit((address, done) -> bluetoothManager.sendFrame(address, frame, writeMode, done), callback);
+    }
+
+    private void submit(Transmission transmission, BluetoothManager.SendCallback callback) {
+        String address;
+        synchronized (this) {
+            address = sessionAddress;
+            if (address == null) {
+                callback.onComplete(new BluetoothManager.SendResult(false, "No Bluetooth device selected. Please select a device from settings first."));
+                return;
+            }
+            if (!bluetoothManager.isConnected(address)) {
+                PendingSend pending = new PendingSend(transmission, callback, SystemClock.elapsedRealtime());
+                pendingSends.add(pending);
+                handler.postDelayed(pending.expire, PENDING_SEND_TIMEOUT_MS);
+                if (!connecting) {
+                    connect();
+                }
+                return;
+            }
+            raisePriority(address);
+        }
+        sendNow(address, transmission, callback, SystemClock.elapsedRealtime());
+    }
+
+    private void sendNow(String address, Transmission transmission, BluetoothManager.SendCallback callback, long requestedAt) {
+        transmission.transmit(address, result -> {
+            Log.d(TAG, "Send completed " + (SystemClock.elapsedRealtime() - requestedAt) + " ms after request");
+            scheduleRelaxPriority();
+            callback.onComplete(result);
+        });
+    }
+
+    private void connect() {
+        connecting = true;
+        if (linkCallback == null) {
+            linkCallback = newLinkCallback(sessionAddress);
+        }
+        bluetoothManager.connectToDeviceByAddress(sessionAddress, linkCallback);
+    }
+
+    private BluetoothManager.BluetoothGattCallback newLinkCallback(String address) {
+        return new BluetoothManager.BluetoothGattCallback() {
+            @Override
+            public void onConnected() {
+                Log.d(TAG, "Session link connected, waiting for services...");
+            }
+
+            @Override
+            public void onServicesDiscovered() {
+                List<PendingSend> ready;
+                synchronized (BluetoothSessionManager.this) {
+                    if (!address.equals(sessionAddress)) {
+                        return;
+                    }
+                    connecting = false;
+                    bluetoothManager.setKeepAlive(address, true);
+                    ready = new ArrayList<>(pendingSends);
+                    pendingSends.clear();
+                    for (PendingSend pending : ready) {
+                        handler.removeCallbacks(pending.expire);
+                    }
+                    if (!ready.isEmpty()) {
+                        raisePriority(address);
+                    }
+                }
+                Log.d(TAG, "Session ready, flushing " + ready.size() + " pending send(s)");
+                for (PendingSend pending : ready) {
+                    sendNow(address, pending.transmission, pending.callback, pending.requestedAt);
+                }
+            }
+
+            @Override
+            public void onDisconnected() {
+                synchronized (BluetoothSessionManager.this) {
+                    if (!address.equals(sessionAddress)) {
+                        return;
+                    }
+                    highPriority = false;
+                    // Link dropped while the session is still wanted: bring it back right away
+                    Log.d(TAG, "Session link dropped, reconnecting");
+                    connect();
+                }
+            }
+
+            @Override
+            public void onConnectionFailed(String error) {
+                synchronized (BluetoothSessionManager.this) {
+                    if (!address.equals(sessionAddress)) {
+                        return;
+                    }
+                    connecting = false;
+                    String errorMsg = "Failed to connect to device";
+                    if (error != null && !error.isEmpty()) {
+                        errorMsg += ": " + error;
+                    } else {
+                        errorMsg += ". Please ensure the device is nearby, powered on, and try again.";
+                    }
+                    failPending(errorMsg);
+                }
+            }
+        };
+    }
+
+    private void raisePriority(String address) {
+        handler.removeCallbacks(relaxPriority);
+        handler.removeCallbacks(enterLowPower);
+        if (bluetoothManager.getLinkProfile(address) == LinkProfile.LOW_POWER) {
+            bluetoothManager.setLinkProfile(address, LinkProfile.INTERACTIVE);
+        }
+        if (!highPriority) {
+            highPriority = bluetoothManager.requestConnectionPriority(address, BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+        }
+    }
+
+    private void scheduleRelaxPriority() {
+        handler.removeCallbacks(relaxPriority);
+        handler.removeCallbacks(enterLowPower);
+        handler.postDelayed(relaxPriority, PRIORITY_RELAX_DELAY_MS);
+        handler.postDelayed(enterLowPower, LOW_POWER_IDLE_DELAY_MS);
+    }
+
+    private synchronized void relaxPriority() {
+        // A running script keeps the bulk profile's interval through pauses between replies
+        if (highPriority && sessionAddress != null
+                && bluetoothManager.getLinkProfile(sessionAddress) != LinkProfile.BULK) {
+            bluetoothManager.requestConnectionPriority(sessionAddress, BluetoothGatt.CONNECTION_PRIORITY_BALANCED);
+        }
+        highPriority = false;
+    }
+
+    private synchronized void enterLowPower() {
+        if (sessionAddress != null && bluetoothManager.getLinkProfile(sessionAddress) == LinkProfile.INTERACTIVE) {
+            bluetoothManager.setLinkProfile(sessionAddress, LinkProfile.LOW_POWER);
+        }
+    }
+
+    private void failPending(String error) {
+        List<PendingSend> failed = new ArrayList<>(pendingSends);
+        pendingSends.clear();
+        for (PendingSend pending : failed) {
+            handler.removeCallbacks(pending.expire);
+            pending.callback.onComplete(new BluetoothManager.SendResult(false, error));
+        }
+    }
+
+    private void expirePending(PendingSend pending) {
+        synchronized (this) {
+            if (!pendingSends.remove(pending)) {
+                return;
+            }
+        }
+        Log.w(TAG, "Send waited " + PENDING_SEND_TIMEOUT_MS + " ms for the session link, giving up");
+        pending.callback.onComplete(new BluetoothManager.SendResult(false,
+                "Device did not connect in time. Please ensure the device is nearby, powered on, and try again."));
+    }
+
+    /**
+     * One way of putting data on the session link (hex or binary, send or request).
+     */
+    private interface Transmission {
+        void transmit(String address, BluetoothManager.SendCallback callback);
+    }
+
+    private class PendingSend {
+        final Transmission transmission;
+        final BluetoothManager.SendCallback callback;
+        final long requestedAt;
+        final Runnable expire = () -> expirePending(this);
+
+        PendingSend(Transmission transmission, BluetoothManager.SendCallback callback, long requestedAt) {
+            this.transmission = transmission;
+            this.callback = callback;
+            this.requestedAt = requestedAt;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+import java.util.Locale;
+
+/**
+ * Counters on how many attempts connections needed, shared by all pooled links.
+ */
+public class ConnectionMetrics {
+    private final int[] attemptsToSuccess;
+    private int successes = 0;
+    private int failures = 0;
+    private int totalAttempts = 0;
+    private long totalConnectTimeMs = 0;
+
+    public ConnectionMetrics(int maxAttempts) {
+        // Index 0 unused, index n counts connections that succeeded on attempt n
+        this.attemptsToSuccess = new int[maxAttempts + 1];
+    }
+
+    public synchronized void recordSuccess(int attempts, long elapsedMs) {
+        successes++;
+        totalAttempts += attempts;
+        totalConnectTimeMs += elapsedMs;
+        attemptsToSuccess[Math.min(attempts, attemptsToSuccess.length - 1)]++;
+    }
+
+    public synchronized void recordFailure(int attempts) {
+        failures++;
+        totalAttempts += attempts;
+    }
+
+    public synchronized int getSuccesses() {
+        return successes;
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    /**
+     * Number of connections that came up on the given (1-based) attempt.
+     */
+    public synchronized int getSuccessesOnAttempt(int attempt) {
+        if (attempt <= 0 || attempt >= attemptsToSuccess.length) {
+            return 0;
+        }
+        return attemptsToSuccess[attempt];
+    }
+
+    public synchronized double getAverageAttempts() {
+        int connections = successes + failures;
+        return connections == 0 ? 0 : (double) totalAttempts / connections;
+    }
+
+    public synchronized long getAverageConnectTimeMs() {
+        return successes == 0 ? 0 : totalConnectTimeMs / successes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("connections ok=").append(successes)
+                .append(" failed=").append(failures)
+                .append(" avgAttempts=").append(String.format(Locale.US, "%.2f", getAverageAttempts()))
+                .append(" avgConnectMs=").append(getAverageConnectTimeMs())
+                .append(" attemptsToSuccess=[");
+        for (int i = 1; i < attemptsToSuccess.length; i++) {
+            if (i > 1) {
+                sb.append(", ");
+            }
+            sb.append(i).append(':').append(attemptsToSuccess[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
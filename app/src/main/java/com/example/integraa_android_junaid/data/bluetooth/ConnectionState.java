@@ -0,0 +1,97 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+import java.util.Objects;
+
+/**
+ * Where the link to the active meter stands, as published by
+ * {@link BluetoothManager#getConnectionState()}. Immutable; a new instance is published on
+ * every change.
+ */
+public final class ConnectionState {
+
+    public enum Phase {
+        /** No device is active and nothing is happening */
+        IDLE,
+        /** No device is active and a scan is running */
+        SCANNING,
+        CONNECTING,
+        /** Connected; services, MTU and reply subscription are being set up */
+        DISCOVERING,
+        /** The link is up and has nothing to do */
+        READY,
+        /** The link is up and frames are being written or awaited */
+        BUSY,
+        /** A device is active but its link is down */
+        DISCONNECTED
+    }
+
+    public static final ConnectionState IDLE = new ConnectionState(Phase.IDLE, null, null, 0);
+    public static final ConnectionState SCANNING = new ConnectionState(Phase.SCANNING, null, null, 0);
+
+    private final Phase phase;
+    private final String address;
+    private final String deviceName;
+    private final int mtu;
+
+    public ConnectionState(Phase phase, String address, String deviceName, int mtu) {
+        this.phase = phase;
+        this.address = address;
+        this.deviceName = deviceName;
+        this.mtu = mtu;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * The active device, or null in {@link Phase#IDLE} and {@link Phase#SCANNING}
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Name the device advertised, or null if none is known
+     */
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    /**
+     * Negotiated ATT MTU while the link is up, otherwise 0
+     */
+    public int getMtu() {
+        return mtu;
+    }
+
+    /**
+     * The link can take frames right away (ready or busy)
+     */
+    public boolean isConnected() {
+        return phase == Phase.READY || phase == Phase.BUSY;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ConnectionState)) {
+            return false;
+        }
+        ConnectionState that = (ConnectionState) o;
+        return mtu == that.mtu && phase == that.phase && Objects.equals(address, that.address)
+                && Objects.equals(deviceName, that.deviceName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(phase, address, deviceName, mtu);
+    }
+
+    @Override
+    public String toString() {
+        return phase + (address != null ? " " + address : "") + (mtu > 0 ? " mtu=" + mtu : "");
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+/**
+ * Decides whether the reply bytes collected so far form a complete, intact frame.
+ */
+public interface FrameValidator {
+    boolean isComplete(byte[] buffer, int length);
+}
@@ -0,0 +1,122 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+
+import com.example.integraa_android_junaid.util.HexCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * The meter characteristic and its write capabilities, resolved once per discovered
+ * service table so the send path doesn't repeat the service/characteristic lookups.
+ * Either holds a usable characteristic or the user-facing reason why there is none.
+ */
+public final class GattHandles {
+    private final BluetoothGattCharacteristic characteristic;
+    private final boolean supportsWrite;
+    private final boolean supportsWriteNoResponse;
+    private final boolean supportsNotify;
+    private final boolean supportsIndicate;
+    private final String error;
+
+    private GattHandles(BluetoothGattCharacteristic characteristic, int properties, String error) {
+        this.characteristic = characteristic;
+        this.supportsWrite = (properties & BluetoothGattCharacteristic.PROPERTY_WRITE) != 0;
+        this.supportsWriteNoResponse = (properties & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0;
+        this.supportsNotify = (properties & BluetoothGattCharacteristic.PROPERTY_NOTIFY) != 0;
+        this.supportsIndicate = (properties & BluetoothGattCharacteristic.PROPERTY_INDICATE) != 0;
+        this.error = error;
+    }
+
+    /**
+     * Look up the meter service and characteristic in the GATT's current service table.
+     */
+    public static GattHandles resolve(BluetoothGatt gatt) {
+        BluetoothGattService service = gatt.getService(BluetoothConnection.SERVICE_UUID);
+        if (service == null) {
+            return failed("Bluetooth service not found. Device may not support required service.");
+        }
+
+        BluetoothGattCharacteristic characteristic = service.getCharacteristic(BluetoothConnection.CHARACTERISTIC_UUID);
+        if (characteristic == null) {
+            return failed("Bluetooth characteristic not found. Device may not support required characteristic.");
+        }
+
+        int properties = characteristic.getProperties();
+        if ((properties & BluetoothGattCharacteristic.PROPERTY_WRITE) == 0 &&
+            (properties & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) == 0) {
+            return failed("Characteristic does not support write operations");
+        }
+        return new GattHandles(characteristic, properties, null);
+    }
+
+    /**
+     * Fingerprint of the GATT's current service table: every service and characteristic
+     * UUID with its properties, in table order. Equal hashes mean the same layout.
+     * @return Hex digest, or null if the table is empty
+     */
+    public static String layoutHash(BluetoothGatt gatt) {
+        List<BluetoothGattService> services = gatt.getServices();
+        if (services == null || services.isEmpty()) {
+            return null;
+        }
+        StringBuilder layout = new StringBuilder();
+        for (BluetoothGattService service : services) {
+            layout.append(service.getUuid()).append('{');
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                layout.append(characteristic.getUuid()).append(':').append(characteristic.getProperties()).append(';');
+            }
+            layout.append('}');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(layout.toString().getBytes(StandardCharsets.UTF_8));
+            return HexCodec.encode(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android runtime ships SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static GattHandles failed(String error) {
+        return new GattHandles(null, 0, error);
+    }
+
+    public boolean isValid() {
+        return characteristic != null;
+    }
+
+    public BluetoothGattCharacteristic getCharacteristic() {
+        return characteristic;
+    }
+
+    public boolean supportsWrite() {
+        return supportsWrite;
+    }
+
+    public boolean supportsWriteNoResponse() {
+        return supportsWriteNoResponse;
+    }
+
+    /**
+     * The meter can push replies on the same characteristic (notify or indicate).
+     */
+    public boolean supportsReplies() {
+        return supportsNotify || supportsIndicate;
+    }
+
+    public boolean supportsNotify() {
+        return supportsNotify;
+    }
+
+    /**
+     * Why the handles are not usable, or null if they are.
+     */
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+
+/**
+ * A single GATT request waiting in the {@link GattOperationQueue}.
+ * Android only allows one outstanding GATT operation per connection, so every
+ * read, write, descriptor write and MTU request goes through the queue.
+ */
+public class GattOperation {
+    public static final long DEFAULT_TIMEOUT_MS = 5000; // 5 seconds
+
+    public enum Type {
+        WRITE_CHARACTERISTIC,
+        READ_CHARACTERISTIC,
+        WRITE_DESCRIPTOR,
+        REQUEST_MTU
+    }
+
+    private final Type type;
+    private final BluetoothGattCharacteristic characteristic;
+    private final BluetoothGattDescriptor descriptor;
+    private final byte[] value;
+    private final int writeType;
+    private final int mtu;
+    private final long timeoutMs;
+    private final OperationCallback callback;
+    private long enqueuedAt;
+    private long startedAt;
+    private volatile boolean cancelled = false;
+
+    private GattOperation(Type type, BluetoothGattCharacteristic characteristic, BluetoothGattDescriptor descriptor,
+                          byte[] value, int writeType, int mtu, long timeoutMs, OperationCallback callback) {
+        this.type = type;
+        this.characteristic = characteristic;
+        this.descriptor = descriptor;
+        this.value = value;
+        this.writeType = writeType;
+        this.mtu = mtu;
+        this.timeoutMs = timeoutMs;
+        this.callback = callback;
+    }
+
+    public static GattOperation writeCharacteristic(BluetoothGattCharacteristic characteristic, byte[] value,
+                                                    int writeType, OperationCallback callback) {
+        return new GattOperation(Type.WRITE_CHARACTERISTIC, characteristic, null, value, writeType, 0,
+                DEFAULT_TIMEOUT_MS, callback);
+    }
+
+    public static GattOperation readCharacteristic(BluetoothGattCharacteristic characteristic, OperationCallback callback) {
+        return new GattOperation(Type.READ_CHARACTERISTIC, characteristic, null, null, 0, 0,
+                DEFAULT_TIMEOUT_MS, callback);
+    }
+
+    public static GattOperation writeDescriptor(BluetoothGattDescriptor descriptor, byte[] value, OperationCallback callback) {
+        return new GattOperation(Type.WRITE_DESCRIPTOR, null, descriptor, value, 0, 0,
+                DEFAULT_TIMEOUT_MS, callback);
+    }
+
+    public static GattOperation requestMtu(int mtu, OperationCallback callback) {
+        return new GattOperation(Type.REQUEST_MTU, null, null, null, 0, mtu,
+                DEFAULT_TIMEOUT_MS, callback);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public BluetoothGattCharacteristic getCharacteristic() {
+        return characteristic;
+    }
+
+    public BluetoothGattDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    public byte[] getValue() {
+        return value;
+    }
+
+    public int getWriteType() {
+        return writeType;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public OperationCallback getCallback() {
+        return callback;
+    }
+
+    long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+
+    void setEnqueuedAt(long enqueuedAt) {
+        this.enqueuedAt = enqueuedAt;
+    }
+
+    long getStartedAt() {
+        return startedAt;
+    }
+
+    void setStartedAt(long startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    /**
+     * Drop the operation if it has not started yet. No callback is delivered for it.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Completion callback for a queued operation.
+     * latencyMs is measured from the moment the operation was enqueued until the
+     * matching GATT callback arrived, so it includes time spent waiting in the queue.
+     */
+    public interface OperationCallback {
+        void onSuccess(byte[] value, int intValue, long latencyMs);
+        void onError(String error);
+    }
+}
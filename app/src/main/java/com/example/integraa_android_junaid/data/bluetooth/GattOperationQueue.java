@@ -0,0 +1,275 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothStatusCodes;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serializes GATT operations for a single connection.
+ * Only one operation is in flight at a time; the next one starts when the matching
+ * BluetoothGattCallback arrives. All state is touched on the handler thread only, so
+ * GATT callbacks arriving on binder threads are posted here.
+ * An operation that times out is still outstanding in the stack, and its late callback
+ * would complete whatever runs next. So a timeout stalls the queue: everything in it
+ * fails and the owner is told to drop the link.
+ */
+public class GattOperationQueue {
+    private static final String TAG = "GattOperationQueue";
+    // Retry delay when the controller's write buffer is full (no-response writes)
+    private static final long BUSY_RETRY_DELAY_MS = 5;
+
+    private static final int START_OK = 0;
+    private static final int START_REJECTED = 1;
+    private static final int START_BUSY = 2;
+
+    private final BluetoothGatt gatt;
+    private final Handler handler;
+    private final Runnable onStalled;
+    private final ArrayDeque<GattOperation> pending = new ArrayDeque<>();
+    private GattOperation current;
+    private Runnable currentTimeout;
+    private boolean closed = false;
+
+    /**
+     * @param onStalled Runs on the handler thread after an operation timed out; the link is unusable
+     */
+    public GattOperationQueue(BluetoothGatt gatt, Handler handler, Runnable onStalled) {
+        this.gatt = gatt;
+        this.handler = handler;
+        this.onStalled = onStalled;
+    }
+
+    public void enqueue(GattOperation operation) {
+        operation.setEnqueuedAt(SystemClock.elapsedRealtime());
+        handler.post(() -> {
+            if (closed) {
+                notifyError(operation, "Bluetooth device not connected");
+                return;
+            }
+            pending.add(operation);
+            executeNext();
+        });
+    }
+
+    /**
+     * Queue several operations back-to-back in one step so that nothing enqueued
+     * concurrently can land between them (e.g. all fragments of one frame).
+     */
+    public void enqueueAll(List<GattOperation> operations) {
+        long now = SystemClock.elapsedRealtime();
+        for (GattOperation operation : operations) {
+            operation.setEnqueuedAt(now);
+        }
+        handler.post(() -> {
+            if (closed) {
+                for (GattOperation operation : operations) {
+                    notifyError(operation, "Bluetooth device not connected");
+                }
+                return;
+            }
+            pending.addAll(operations);
+            executeNext();
+        });
+    }
+
+    /**
+     * Called from the GATT callback when an operation of the given type completed.
+     * @param type Operation type reported by the callback
+     * @param target Characteristic or descriptor the callback is for, null for MTU requests
+     * @param status GATT status code
+     * @param value Value read back (characteristic reads), may be null
+     * @param intValue Numeric result (negotiated MTU for MTU requests)
+     */
+    public void onOperationComplete(GattOperation.Type type, Object target, int status, byte[] value, int intValue) {
+        long completedAt = SystemClock.elapsedRealtime();
+        handler.post(() -> {
+            GattOperation operation = current;
+            if (operation == null || operation.getType() != type || !isTargetOf(operation, target)) {
+                Log.w(TAG, "Unexpected " + type + " callback, status " + status);
+                return;
+            }
+            finishCurrent();
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                long latencyMs = completedAt - operation.getEnqueuedAt();
+                Log.d(TAG, type + " completed in " + latencyMs + " ms (on air " + (completedAt - operation.getStartedAt()) + " ms)");
+                if (operation.getCallback() != null) {
+                    operation.getCallback().onSuccess(value, intValue, latencyMs);
+                }
+            } else {
+                notifyError(operation, type + " failed with GATT status " + status);
+            }
+            executeNext();
+        });
+    }
+
+    /**
+     * Fail the in-flight operation and everything still waiting, e.g. on disconnect.
+     */
+    public void close(String reason) {
+        handler.post(() -> {
+            closed = true;
+            List<GattOperation> failed = new ArrayList<>();
+            if (current != null) {
+                failed.add(current);
+                finishCurrent();
+            }
+            failed.addAll(pending);
+            pending.clear();
+            for (GattOperation operation : failed) {
+                notifyError(operation, reason);
+            }
+        });
+    }
+
+    private static boolean isTargetOf(GattOperation operation, Object target) {
+        if (target instanceof BluetoothGattCharacteristic) {
+            BluetoothGattCharacteristic characteristic = operation.getCharacteristic();
+            return characteristic != null
+                    && characteristic.getUuid().equals(((BluetoothGattCharacteristic) target).getUuid());
+        }
+        if (target instanceof BluetoothGattDescriptor) {
+            BluetoothGattDescriptor descriptor = operation.getDescriptor();
+            return descriptor != null
+                    && descriptor.getUuid().equals(((BluetoothGattDescriptor) target).getUuid());
+        }
+        return true;
+    }
+
+    public boolean isIdle() {
+        return current == null && pending.isEmpty();
+    }
+
+    private void executeNext() {
+        if (closed || current != null) {
+            return;
+        }
+        GattOperation next = pending.poll();
+        while (next != null && next.isCancelled()) {
+            next = pending.poll();
+        }
+        if (next == null) {
+            return;
+        }
+        GattOperation operation = next;
+
+        current = operation;
+        operation.setStartedAt(SystemClock.elapsedRealtime());
+        currentTimeout = () -> {
+            if (current == operation) {
+                Log.w(TAG, operation.getType() + " timed out after " + operation.getTimeoutMs() + " ms, dropping the link");
+                closed = true;
+                finishCurrent();
+                List<GattOperation> failed = new ArrayList<>(pending);
+                pending.clear();
+                notifyError(operation, "Bluetooth operation timed out. Device may be out of range or not responding.");
+                for (GattOperation waiting : failed) {
+                    notifyError(waiting, "Bluetooth device not responding");
+                }
+                onStalled.run();
+            }
+        };
+        handler.postDelayed(currentTimeout, operation.getTimeoutMs());
+
+        attemptStart(operation);
+    }
+
+    /**
+     * Hand the current operation to the stack. No-response writes that bounce off a full
+     * controller buffer are retried shortly after instead of failing, which is the
+     * pre-API 33 equivalent of waiting for onCanWriteMore.
+     */
+    private void attemptStart(GattOperation operation) {
+        if (current != operation) {
+            return;
+        }
+        int result;
+        try {
+            result = start(operation);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Permission denied executing " + operation.getType(), e);
+            finishCurrent();
+            notifyError(operation, "Bluetooth permission denied");
+            executeNext();
+            return;
+        } catch (Exception e) {
+            Log.e(TAG, "Error executing " + operation.getType(), e);
+            finishCurrent();
+            notifyError(operation, "Bluetooth operation error: " + e.getMessage());
+            executeNext();
+            return;
+        }
+
+        if (result == START_BUSY) {
+            handler.postDelayed(() -> attemptStart(operation), BUSY_RETRY_DELAY_MS);
+        } else if (result == START_REJECTED) {
+            Log.e(TAG, operation.getType() + " was rejected by the Bluetooth stack");
+            finishCurrent();
+            notifyError(operation, "Failed to write to Bluetooth device. Device may be out of range or disconnected.");
+            executeNext();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private int start(GattOperation operation) {
+        switch (operation.getType()) {
+            case WRITE_CHARACTERISTIC: {
+                BluetoothGattCharacteristic characteristic = operation.getCharacteristic();
+                boolean noResponse = operation.getWriteType() == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE;
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                    int status = gatt.writeCharacteristic(characteristic, operation.getValue(), operation.getWriteType());
+                    if (status == BluetoothStatusCodes.SUCCESS) {
+                        return START_OK;
+                    }
+                    return status == BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY ? START_BUSY : START_REJECTED;
+                }
+                characteristic.setWriteType(operation.getWriteType());
+                characteristic.setValue(operation.getValue());
+                if (gatt.writeCharacteristic(characteristic)) {
+                    return START_OK;
+                }
+                // Older stacks report a full buffer as a plain false
+                return noResponse ? START_BUSY : START_REJECTED;
+            }
+            case READ_CHARACTERISTIC:
+                return toStartResult(gatt.readCharacteristic(operation.getCharacteristic()));
+            case WRITE_DESCRIPTOR:
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                    return gatt.writeDescriptor(operation.getDescriptor(), operation.getValue())
+                            == BluetoothStatusCodes.SUCCESS ? START_OK : START_REJECTED;
+                }
+                operation.getDescriptor().setValue(operation.getValue());
+                return toStartResult(gatt.writeDescriptor(operation.getDescriptor()));
+            case REQUEST_MTU:
+                return toStartResult(gatt.requestMtu(operation.getMtu()));
+            default:
+                return START_REJECTED;
+        }
+    }
+
+    private static int toStartResult(boolean started) {
+        return started ? START_OK : START_REJECTED;
+    }
+
+    private void finishCurrent() {
+        if (currentTimeout != null) {
+            handler.removeCallbacks(currentTimeout);
+            currentTimeout = null;
+        }
+        current = null;
+    }
+
+    private void notifyError(GattOperation operation, String error) {
+        if (operation.getCallback() != null) {
+            operation.getCallback().onError(error);
+        }
+    }
+}
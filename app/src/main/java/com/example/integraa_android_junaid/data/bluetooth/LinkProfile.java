@@ -0,0 +1,36 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+import android.bluetooth.BluetoothGatt;
+
+/**
+ * How a link to a meter is tuned: connection interval and radio PHY. Applied once the link
+ * is ready and again after every reconnect. The MTU is always negotiated to the maximum
+ * while connecting, so it is the same for every profile.
+ */
+public enum LinkProfile {
+    /** Scripts and fleet runs: shortest connection interval and the 2M PHY where both sides support it */
+    BULK(BluetoothGatt.CONNECTION_PRIORITY_HIGH, true),
+    /** Single commands from the UI; bursts are sped up by the session while they last */
+    INTERACTIVE(BluetoothGatt.CONNECTION_PRIORITY_BALANCED, false),
+    /** A kept-alive link nobody has used for a while */
+    LOW_POWER(BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER, false);
+
+    private final int connectionPriority;
+    private final boolean prefer2mPhy;
+
+    LinkProfile(int connectionPriority, boolean prefer2mPhy) {
+        this.connectionPriority = connectionPriority;
+        this.prefer2mPhy = prefer2mPhy;
+    }
+
+    /**
+     * One of BluetoothGatt.CONNECTION_PRIORITY_*
+     */
+    int getConnectionPriority() {
+        return connectionPriority;
+    }
+
+    boolean prefers2mPhy() {
+        return prefer2mPhy;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+import java.util.Locale;
+
+/**
+ * Bytes moved per {@link LinkProfile}, shared by all pooled links. Throughput is measured
+ * over the time a link had at least one frame in flight, so pipelined frames aren't
+ * counted twice and idle time between commands doesn't count at all.
+ */
+public class LinkThroughput {
+    private final long[] bytes = new long[LinkProfile.values().length];
+    private final int[] frames = new int[LinkProfile.values().length];
+    private final long[] busyMs = new long[LinkProfile.values().length];
+
+    /**
+     * A frame completed: what was written plus the reply, if any.
+     */
+    public synchronized void recordFrame(LinkProfile profile, int byteCount) {
+        bytes[profile.ordinal()] += byteCount;
+        frames[profile.ordinal()]++;
+    }
+
+    /**
+     * A link went idle after being busy for the given time.
+     */
+    public synchronized void recordBusy(LinkProfile profile, long elapsedMs) {
+        busyMs[profile.ordinal()] += Math.max(elapsedMs, 0);
+    }
+
+    public synchronized int getFrames(LinkProfile profile) {
+        return frames[profile.ordinal()];
+    }
+
+    /**
+     * Average bytes per second while busy, or 0 if nothing was sent with the profile yet.
+     */
+    public synchronized double getBytesPerSecond(LinkProfile profile) {
+        long ms = busyMs[profile.ordinal()];
+        return ms == 0 ? 0 : bytes[profile.ordinal()] * 1000.0 / ms;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("throughput");
+        for (LinkProfile profile : LinkProfile.values()) {
+            sb.append(' ').append(profile.name().toLowerCase(Locale.US))
+                    .append("=").append(String.format(Locale.US, "%.0f", getBytesPerSecond(profile)))
+                    .append("B/s (").append(frames[profile.ordinal()]).append(" frames)");
+        }
+        return sb.toString();
+    }
+}
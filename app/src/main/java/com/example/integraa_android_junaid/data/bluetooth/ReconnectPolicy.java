@@ -0,0 +1,89 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+import java.util.Random;
+
+/**
+ * Decides whether a failed connection attempt is retried and how long to wait first.
+ * Delays grow exponentially with "equal jitter" (half fixed, half random) so that several
+ * phones reconnecting to the same meter don't hammer it in lockstep. After a few direct
+ * attempts the connection falls back to autoConnect, which lets the controller wait for
+ * the device's advertisement instead of failing fast with GATT_ERROR 133.
+ */
+public class ReconnectPolicy {
+    // Pseudo status codes for failures that don't come with a GATT status
+    public static final int STATUS_TIMEOUT = -1;
+    public static final int STATUS_DISCOVERY_FAILED = -2;
+
+    private static final int GATT_INTERNAL_ERROR = 8;
+    private static final int GATT_CONN_TIMEOUT = 22;
+    private static final int GATT_CONN_FAIL_ESTABLISH = 62;
+    private static final int GATT_ERROR = 133;
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final int directAttempts;
+    private final Random random = new Random();
+
+    /**
+     * @param maxAttempts Total connection attempts, including the first one
+     * @param baseDelayMs Delay scale before the first retry
+     * @param maxDelayMs Upper bound for a single delay
+     * @param directAttempts Attempts made with autoConnect=false before falling back to autoConnect=true
+     */
+    public ReconnectPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, int directAttempts) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.directAttempts = directAttempts;
+    }
+
+    public static ReconnectPolicy defaultPolicy() {
+        return new ReconnectPolicy(5, 250, 8000, 3);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param attempt The attempt that just failed (1-based)
+     * @param status GATT status of the failure, or one of the STATUS_* pseudo codes
+     */
+    public boolean shouldRetry(int attempt, int status) {
+        return attempt < maxAttempts && isTransient(status);
+    }
+
+    /**
+     * Delay before the attempt following the given one.
+     */
+    public long nextDelayMs(int attempt) {
+        int shift = Math.min(Math.max(attempt - 1, 0), 16);
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << shift);
+        long half = ceiling / 2;
+        synchronized (random) {
+            return half + (long) (random.nextDouble() * (ceiling - half));
+        }
+    }
+
+    public boolean useAutoConnect(int attempt) {
+        return attempt > directAttempts;
+    }
+
+    /**
+     * Failures worth retrying. Peer-initiated disconnects and permission problems are not.
+     */
+    static boolean isTransient(int status) {
+        switch (status) {
+            case STATUS_TIMEOUT:
+            case STATUS_DISCOVERY_FAILED:
+            case GATT_INTERNAL_ERROR:
+            case GATT_CONN_TIMEOUT:
+            case GATT_CONN_FAIL_ESTABLISH:
+            case GATT_ERROR:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+import android.os.Handler;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Reassembles reply frames from characteristic notifications.
+ * A reply longer than the MTU arrives as several notifications; fragments are appended
+ * until the buffer holds a frame the {@link FrameValidator} accepts. Bytes that never form
+ * a valid frame are dropped once no further fragment arrives within {@link #FRAME_GAP_MS}.
+ * Must only be used on the connection's handler thread.
+ */
+class ResponseAssembler {
+    private static final String TAG = "ResponseAssembler";
+    // A frame's fragments arrive back-to-back; a longer pause ends the frame
+    static final long FRAME_GAP_MS = 150;
+    private static final int MAX_FRAME_SIZE = 512;
+
+    interface Listener {
+        void onFrame(byte[] frame);
+    }
+
+    private final Handler handler;
+    private final FrameValidator validator;
+    private final Listener listener;
+    private final byte[] buffer = new byte[MAX_FRAME_SIZE];
+    private int length = 0;
+    private final Runnable dropPartialFrame = this::dropPartialFrame;
+
+    ResponseAssembler(Handler handler, FrameValidator validator, Listener listener) {
+        this.handler = handler;
+        this.validator = validator;
+        this.listener = listener;
+    }
+
+    void onNotification(byte[] value) {
+        if (value == null || value.length == 0) {
+            return;
+        }
+        handler.removeCallbacks(dropPartialFrame);
+        if (length + value.length > buffer.length) {
+            Log.w(TAG, "Reply exceeds " + MAX_FRAME_SIZE + " bytes, dropping " + length + " buffered byte(s)");
+            length = 0;
+            if (value.length > buffer.length) {
+                return;
+            }
+        }
+        System.arraycopy(value, 0, buffer, length, value.length);
+        length += value.length;
+
+        if (validator.isComplete(buffer, length)) {
+            byte[] frame = Arrays.copyOf(buffer, length);
+            length = 0;
+            listener.onFrame(frame);
+        } else {
+            handler.postDelayed(dropPartialFrame, FRAME_GAP_MS);
+        }
+    }
+
+    void reset() {
+        handler.removeCallbacks(dropPartialFrame);
+        length = 0;
+    }
+
+    private void dropPartialFrame() {
+        if (length > 0) {
+            Log.w(TAG, "Dropping " + length + " byte(s) that did not form a valid reply (bad checksum or truncated)");
+            length = 0;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Matches reply frames to the requests waiting for them.
+ * A reply belongs to the oldest outstanding request whose opcode byte (at {@code opcodeOffset})
+ * equals the reply's; with a constant header at that offset this degrades to FIFO order,
+ * which is how the meter answers anyway. Requests without a reply fail {@link #RESPONSE_TIMEOUT_MS}
+ * after they were fully written; a reply with the same opcode arriving within
+ * {@link #LATE_REPLY_WINDOW_MS} after that is taken as the late answer and dropped, so it
+ * can't complete the next request with the same opcode.
+ */
+class ResponseCorrelator {
+    private static final String TAG = "ResponseCorrelator";
+    static final long RESPONSE_TIMEOUT_MS = 3000; // 3 seconds
+    static final long LATE_REPLY_WINDOW_MS = 1500;
+    static final int DEFAULT_OPCODE_OFFSET = 0;
+
+    private final Handler handler;
+    private final int opcodeOffset;
+    private final LinkedList<PendingRequest> pending = new LinkedList<>();
+    private final LinkedList<LateReply> lateReplies = new LinkedList<>();
+
+    ResponseCorrelator(Handler handler, int opcodeOffset) {
+        this.handler = handler;
+        this.opcodeOffset = opcodeOffset;
+    }
+
+    /**
+     * Start waiting for the reply to a request. Call before the request is written so a
+     * fast reply can't overtake the registration, and {@link #onWritten} once it is.
+     */
+    PendingRequest register(byte[] request, long requestedAt, BluetoothManager.SendCallback callback) {
+        PendingRequest pendingRequest = new PendingRequest(opcodeOf(request), requestedAt, callback);
+        pendingRequest.timeout = () -> {
+            if (remove(pendingRequest)) {
+                Log.w(TAG, "No reply within " + RESPONSE_TIMEOUT_MS + " ms");
+                synchronized (this) {
+                    lateReplies.add(new LateReply(pendingRequest.opcode,
+                            SystemClock.elapsedRealtime() + LATE_REPLY_WINDOW_MS));
+                }
+                callback.onComplete(new BluetoothManager.SendResult(BluetoothManager.SendResult.Failure.NO_REPLY,
+                        "Device did not respond. Please check the device and try again.",
+                        SystemClock.elapsedRealtime() - requestedAt));
+            }
+        };
+        synchronized (this) {
+            pending.add(pendingRequest);
+        }
+        return pendingRequest;
+    }
+
+    /**
+     * The last fragment of the request was written; the reply timeout runs from here, so
+     * time spent queued behind other operations doesn't count against the meter.
+     */
+    void onWritten(PendingRequest request) {
+        synchronized (this) {
+            if (!pending.contains(request)) {
+                // Already answered or failed
+                return;
+            }
+            request.written = true;
+        }
+        handler.postDelayed(request.timeout, RESPONSE_TIMEOUT_MS);
+    }
+
+    /**
+     * Give up on a request, e.g. because writing it failed.
+     */
+    void fail(PendingRequest request, String error) {
+        if (remove(request)) {
+            handler.removeCallbacks(request.timeout);
+            request.callback.onComplete(new BluetoothManager.SendResult(false, error,
+                    SystemClock.elapsedRealtime() - request.requestedAt));
+        }
+    }
+
+    /**
+     * @return true if the frame answered an outstanding request, or one that just timed out
+     */
+    boolean onFrame(byte[] frame) {
+        int opcode = opcodeOf(frame);
+        PendingRequest match = null;
+        synchronized (this) {
+            if (takeLateReply(opcode)) {
+                Log.w(TAG, "Dropping late reply with opcode " + opcode + " to a request that timed out");
+                return true;
+            }
+            Iterator<PendingRequest> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                PendingRequest request = iterator.next();
+                if (request.opcode == opcode) {
+                    iterator.remove();
+                    match = request;
+                    break;
+                }
+            }
+        }
+        if (match == null) {
+            Log.w(TAG, "Unsolicited reply with opcode " + opcode + ", " + frame.length + " byte(s)");
+            return false;
+        }
+        handler.removeCallbacks(match.timeout);
+        long roundTripMs = SystemClock.elapsedRealtime() - match.requestedAt;
+        Log.d(TAG, "Reply matched in " + roundTripMs + " ms");
+        match.callback.onComplete(new BluetoothManager.SendResult(true, null, roundTripMs, frame));
+        return true;
+    }
+
+    void failAll(String reason) {
+        List<PendingRequest> failed;
+        synchronized (this) {
+            failed = new ArrayList<>(pending);
+            pending.clear();
+            lateReplies.clear();
+        }
+        for (PendingRequest request : failed) {
+            handler.removeCallbacks(request.timeout);
+            // A request the meter already received may have been carried out
+            BluetoothManager.SendResult.Failure failure = request.written
+                    ? BluetoothManager.SendResult.Failure.NO_REPLY : BluetoothManager.SendResult.Failure.NOT_WRITTEN;
+            request.callback.onComplete(new BluetoothManager.SendResult(failure, reason,
+                    SystemClock.elapsedRealtime() - request.requestedAt));
+        }
+    }
+
+    /**
+     * Consume the dead window of a timed-out request with this opcode, if one is open.
+     */
+    private boolean takeLateReply(int opcode) {
+        long now = SystemClock.elapsedRealtime();
+        Iterator<LateReply> iterator = lateReplies.iterator();
+        while (iterator.hasNext()) {
+            LateReply lateReply = iterator.next();
+            if (lateReply.until <= now) {
+                iterator.remove();
+            } else if (lateReply.opcode == opcode) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized boolean remove(PendingRequest request) {
+        return pending.remove(request);
+    }
+
+    private int opcodeOf(byte[] frame) {
+        return frame != null && frame.length > opcodeOffset ? frame[opcodeOffset] & 0xFF : -1;
+    }
+
+    static final class PendingRequest {
+        final int opcode;
+        final long requestedAt;
+        final BluetoothManager.SendCallback callback;
+        Runnable timeout;
+        boolean written;
+
+        PendingRequest(int opcode, long requestedAt, BluetoothManager.SendCallback callback) {
+            this.opcode = opcode;
+            this.requestedAt = requestedAt;
+            this.callback = callback;
+        }
+    }
+
+    private static final class LateReply {
+        final int opcode;
+        final long until;
+
+        LateReply(int opcode, long until) {
+            this.opcode = opcode;
+            this.until = until;
+        }
+    }
+}
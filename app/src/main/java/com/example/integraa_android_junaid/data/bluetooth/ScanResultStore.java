@@ -0,0 +1,140 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+import android.bluetooth.BluetoothDevice;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every device seen by a scan, one entry per address, with a smoothed signal strength.
+ * Entries outlive the scan that found them, so meters can still be ranked by distance
+ * afterwards; entries not seen for {@link #RETENTION_MS} are dropped on the next scan.
+ *
+ * Updated from the scan callback and read from any thread.
+ */
+public class ScanResultStore {
+    // Weight of a new reading; single advertisements fluctuate by 10 dBm and more
+    private static final double RSSI_SMOOTHING = 0.3;
+    private static final long RETENTION_MS = 10 * 60 * 1000;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile long scanStartedAt = 0;
+
+    /**
+     * Start a new scan: only devices seen from now on are in {@link #snapshot()}.
+     */
+    public void beginScan() {
+        long now = SystemClock.elapsedRealtime();
+        scanStartedAt = now;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().lastSeen > RETENTION_MS) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Record an advertisement.
+     * @param name Advertised name, or null to keep the one seen before
+     * @param advertisement Raw advertisement data, or null
+     */
+    public void update(String address, String name, BluetoothDevice device, int rssi, byte[] advertisement) {
+        long now = SystemClock.elapsedRealtime();
+        Entry entry = entries.computeIfAbsent(address, Entry::new);
+        synchronized (entry) {
+            entry.smoothedRssi = entry.lastSeen == 0 || entry.lastSeen < scanStartedAt
+                    ? rssi
+                    : entry.smoothedRssi + RSSI_SMOOTHING * (rssi - entry.smoothedRssi);
+            entry.lastSeen = now;
+            entry.device = device;
+            if (name != null) {
+                entry.name = name;
+            }
+            if (advertisement != null) {
+                entry.advertisement = advertisement;
+            }
+        }
+    }
+
+    /**
+     * Smoothed signal strength from the latest scan that saw the device, or null if none did.
+     */
+    public Integer getRssi(String address) {
+        Entry entry = address != null ? entries.get(address) : null;
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            return (int) Math.round(entry.smoothedRssi);
+        }
+    }
+
+    /**
+     * Name the device advertised, or null.
+     */
+    public String getName(String address) {
+        Entry entry = address != null ? entries.get(address) : null;
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            return entry.name;
+        }
+    }
+
+    /**
+     * Raw advertisement data last seen from the device, or null.
+     */
+    public byte[] getAdvertisement(String address) {
+        Entry entry = address != null ? entries.get(address) : null;
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            return entry.advertisement;
+        }
+    }
+
+    /**
+     * Devices seen in the current scan, strongest signal first. Devices that advertised no
+     * name are listed under their address.
+     */
+    public List<BluetoothDeviceModel> snapshot() {
+        long since = scanStartedAt;
+        List<BluetoothDeviceModel> devices = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                if (entry.lastSeen >= since) {
+                    BluetoothDeviceModel device = new BluetoothDeviceModel(
+                            BluetoothManager.displayName(entry.name, entry.address), entry.address, entry.device);
+                    device.setRssi((int) Math.round(entry.smoothedRssi));
+                    devices.add(device);
+                }
+            }
+        }
+        Collections.sort(devices, (a, b) -> {
+            int byRssi = Integer.compare(b.getRssi(), a.getRssi());
+            return byRssi != 0 ? byRssi : a.getAddress().compareTo(b.getAddress());
+        });
+        return devices;
+    }
+
+    private static final class Entry {
+        final String address;
+        String name;
+        BluetoothDevice device;
+        double smoothedRssi;
+        long lastSeen;
+        byte[] advertisement;
+
+        Entry(String address) {
+            this.address = address;
+        }
+    }
+}
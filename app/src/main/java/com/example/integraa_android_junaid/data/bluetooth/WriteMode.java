@@ -0,0 +1,17 @@
+package com.example.integraa_android_junaid.data.bluetooth;
+
+/**
+ * How payload fragments are written to the meter characteristic.
+ */
+public enum WriteMode {
+    /**
+     * WRITE_TYPE_DEFAULT: every fragment waits for the device's write response.
+     */
+    ACKNOWLEDGED,
+
+    /**
+     * WRITE_TYPE_NO_RESPONSE: fragments are handed to the controller back-to-back and
+     * only throttled by local flow control. Used for bulk provisioning scripts.
+     */
+    PIPELINED
+}
@@ -0,0 +1,218 @@
+package com.example.integraa_android_junaid.data.local;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.integraa_android_junaid.util.HexCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only binary record of every frame sent to a meter: when, to which meter, the
+ * frame, the reply and whether it succeeded. Uploaded in batches by {@code AuditUploadWorker}.
+ *
+ * Records are buffered in memory and appended by a background thread, one write per
+ * {@link #FLUSH_DELAY_MS} window. The active segment is sealed (renamed to its creation
+ * time) once it reaches {@link #MAX_SEGMENT_BYTES} or before an upload; sealed segments
+ * are deleted once uploaded, or oldest first when they exceed {@link #MAX_RETAINED_BYTES}.
+ *
+ * Segment layout: the magic "IAL1", then records of
+ * timestamp (long, ms) | meter MAC (6 bytes) | flags (byte: 1 = success, 2 = has reply) |
+ * latency (unsigned short, ms, capped) | frame (unsigned short length + bytes) |
+ * reply (unsigned short length + bytes) | error (unsigned short length + UTF-8)
+ */
+public class AuditLog {
+    private static final String TAG = "AuditLog";
+    private static final String DIRECTORY = "audit";
+    private static final String ACTIVE_SEGMENT = "active.log";
+    private static final String SEALED_SUFFIX = ".seg";
+    private static final byte[] MAGIC = {'I', 'A', 'L', '1'};
+    private static final int FLAG_SUCCESS = 1;
+    private static final int FLAG_HAS_REPLY = 2;
+    private static final long FLUSH_DELAY_MS = 500;
+    private static final long MAX_SEGMENT_BYTES = 256 * 1024;
+    private static final long MAX_RETAINED_BYTES = 8 * 1024 * 1024;
+
+    private final File directory;
+    private final File activeSegment;
+    private final ScheduledExecutorService io = Executors.newSingleThreadScheduledExecutor();
+    private final ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pendingRecords = new DataOutputStream(pendingBytes);
+    private boolean flushScheduled = false;
+
+    public AuditLog(Context context) {
+        this.directory = new File(context.getFilesDir(), DIRECTORY);
+        this.activeSegment = new File(directory, ACTIVE_SEGMENT);
+    }
+
+    /**
+     * Record one frame sent to a meter. Never blocks on the disk.
+     * @param response The meter's reply, or null
+     * @param error Why it failed, or null
+     */
+    public synchronized void record(String address, byte[] frame, boolean success, byte[] response,
+                                    long latencyMs, String error) {
+        try {
+            pendingRecords.writeLong(System.currentTimeMillis());
+            pendingRecords.write(macBytes(address));
+            int flags = (success ? FLAG_SUCCESS : 0) | (response != null ? FLAG_HAS_REPLY : 0);
+            pendingRecords.writeByte(flags);
+            pendingRecords.writeShort((int) Math.min(Math.max(latencyMs, 0), 0xFFFF));
+            writeBytes(frame);
+            writeBytes(response);
+            writeBytes(error != null ? error.getBytes(StandardCharsets.UTF_8) : null);
+        } catch (IOException e) {
+            // Writing to a ByteArrayOutputStream doesn't fail
+            throw new IllegalStateException(e);
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            io.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Flush and seal the active segment so everything recorded so far can be uploaded.
+     * Blocks until done; call off the main thread.
+     */
+    public void sealActiveSegment() {
+        try {
+            io.submit(() -> {
+                flush();
+                seal();
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error sealing audit segment", e);
+        }
+    }
+
+    /**
+     * Sealed segments, oldest first.
+     */
+    public List<File> getSealedSegments() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEALED_SUFFIX));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        // Names are creation times of equal width, so name order is age order
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    /**
+     * Remove segments the backend has accepted.
+     */
+    public void delete(List<File> segments) {
+        for (File segment : segments) {
+            if (!segment.delete()) {
+                Log.w(TAG, "Could not delete " + segment.getName());
+            }
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        int length = bytes != null ? Math.min(bytes.length, 0xFFFF) : 0;
+        pendingRecords.writeShort(length);
+        if (length > 0) {
+            pendingRecords.write(bytes, 0, length);
+        }
+    }
+
+    /**
+     * "AA:BB:CC:DD:EE:FF" as 6 bytes; all zero if the address isn't a MAC.
+     */
+    private static byte[] macBytes(String address) {
+        byte[] mac = new byte[6];
+        if (address == null || address.length() != 17) {
+            return mac;
+        }
+        for (int i = 0; i < 6; i++) {
+            int high = HexCodec.digit(address.charAt(i * 3));
+            int low = HexCodec.digit(address.charAt(i * 3 + 1));
+            if ((high | low) < 0) {
+                return new byte[6];
+            }
+            mac[i] = (byte) ((high << 4) | low);
+        }
+        return mac;
+    }
+
+    /**
+     * Runs on the io thread.
+     */
+    private void flush() {
+        byte[] batch;
+        synchronized (this) {
+            batch = pendingBytes.toByteArray();
+            pendingBytes.reset();
+            flushScheduled = false;
+        }
+        if (batch.length == 0) {
+            return;
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create " + directory);
+            return;
+        }
+        boolean newSegment = !activeSegment.exists() || activeSegment.length() == 0;
+        try (FileOutputStream out = new FileOutputStream(activeSegment, true)) {
+            if (newSegment) {
+                out.write(MAGIC);
+            }
+            out.write(batch);
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing audit log", e);
+            return;
+        }
+        if (activeSegment.length() >= MAX_SEGMENT_BYTES) {
+            seal();
+        }
+    }
+
+    /**
+     * Runs on the io thread.
+     */
+    private void seal() {
+        if (!activeSegment.exists() || activeSegment.length() == 0) {
+            return;
+        }
+        long stamp = System.currentTimeMillis();
+        File sealed;
+        do {
+            sealed = new File(directory, String.format(Locale.US, "%015d", stamp++) + SEALED_SUFFIX);
+        } while (sealed.exists());
+        if (!activeSegment.renameTo(sealed)) {
+            Log.e(TAG, "Could not seal audit segment");
+            return;
+        }
+        trimRetained();
+    }
+
+    private void trimRetained() {
+        List<File> segments = getSealedSegments();
+        long total = 0;
+        for (File segment : segments) {
+            total += segment.length();
+        }
+        for (int i = 0; i < segments.size() && total > MAX_RETAINED_BYTES; i++) {
+            total -= segments.get(i).length();
+            Log.w(TAG, "Audit log over its size limit, dropping " + segments.get(i).getName());
+            segments.get(i).delete();
+        }
+    }
+}
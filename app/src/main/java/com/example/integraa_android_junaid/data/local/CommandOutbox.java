@@ -0,0 +1,309 @@
+package com.example.integraa_android_junaid.data.local;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.integraa_android_junaid.util.WorkManagerHelper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Built command frames that haven't been confirmed by their meter yet, kept in an
+ * append-only log in app storage so they survive process death and dropped links.
+ * {@code OutboxDrainWorker} sends whatever is left once the meter is in range.
+ *
+ * Callers never wait for the disk: records are buffered in memory and written by a
+ * background thread, and everything that arrives within {@link #FLUSH_DELAY_MS} shares
+ * one write and one fsync. A crash inside that window can lose the newest records.
+ */
+public class CommandOutbox {
+    private static final String TAG = "CommandOutbox";
+    private static final String FILE_NAME = "command_outbox.log";
+    private static final byte RECORD_ENQUEUE = 'E';
+    private static final byte RECORD_DONE = 'D';
+    private static final long FLUSH_DELAY_MS = 20;
+    // Rewrite the log with only the pending entries once it grows past this
+    private static final long COMPACT_THRESHOLD_BYTES = 64 * 1024;
+    // Don't replay settings onto a meter a day after the technician entered them
+    private static final long MAX_AGE_MS = TimeUnit.HOURS.toMillis(24);
+
+    private final Context context;
+    private final File file;
+    private final ScheduledExecutorService io = Executors.newSingleThreadScheduledExecutor();
+    private final Map<Long, Entry> entries = new LinkedHashMap<>();
+    private final ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pendingRecords = new DataOutputStream(pendingBytes);
+    private boolean loaded = false;
+    private boolean flushScheduled = false;
+    private long nextId = 1;
+
+    public CommandOutbox(Context context) {
+        this.context = context;
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+        // Read the log off the main thread before the first send needs it
+        io.execute(this::ensureLoaded);
+    }
+
+    /**
+     * Record a frame about to be sent to a meter. An identical frame still pending for the
+     * same meter is replaced, so resending by hand doesn't queue the command twice.
+     * @return Id to confirm the entry with
+     */
+    public synchronized long enqueue(String address, byte[] frame) {
+        ensureLoaded();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry existing = iterator.next();
+            if (existing.address.equals(address) && Arrays.equals(existing.frame, frame)) {
+                iterator.remove();
+                appendDone(existing.id);
+            }
+        }
+        Entry entry = new Entry(nextId++, address, frame.clone(), System.currentTimeMillis());
+        entries.put(entry.id, entry);
+        appendEnqueue(entry);
+        return entry.id;
+    }
+
+    /**
+     * The meter confirmed the frame, or received it without replying; it won't be sent again.
+     */
+    public synchronized void markDone(long id) {
+        ensureLoaded();
+        if (entries.remove(id) != null) {
+            appendDone(id);
+        }
+    }
+
+    /**
+     * Sending failed; leave the entry for the drain worker and make sure it is scheduled.
+     */
+    public void keepForRetry(long id) {
+        synchronized (this) {
+            ensureLoaded();
+            if (!entries.containsKey(id)) {
+                return;
+            }
+        }
+        WorkManagerHelper.scheduleOutboxDrain(context);
+    }
+
+    /**
+     * Pending entries, oldest first. Entries older than a day are dropped instead.
+     */
+    public synchronized List<Entry> getPending() {
+        ensureLoaded();
+        long cutoff = System.currentTimeMillis() - MAX_AGE_MS;
+        List<Entry> pending = new ArrayList<>(entries.size());
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.createdAt < cutoff) {
+                Log.w(TAG, "Dropping expired command for " + entry.address);
+                iterator.remove();
+                appendDone(entry.id);
+            } else {
+                pending.add(entry);
+            }
+        }
+        return pending;
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return entries.size();
+    }
+
+    private void appendEnqueue(Entry entry) {
+        try {
+            byte[] address = entry.address.getBytes(StandardCharsets.UTF_8);
+            pendingRecords.writeByte(RECORD_ENQUEUE);
+            pendingRecords.writeLong(entry.id);
+            pendingRecords.writeLong(entry.createdAt);
+            pendingRecords.writeShort(address.length);
+            pendingRecords.write(address);
+            pendingRecords.writeInt(entry.frame.length);
+            pendingRecords.write(entry.frame);
+        } catch (IOException e) {
+            // Writing to a ByteArrayOutputStream doesn't fail
+            throw new IllegalStateException(e);
+        }
+        scheduleFlush();
+    }
+
+    private void appendDone(long id) {
+        try {
+            pendingRecords.writeByte(RECORD_DONE);
+            pendingRecords.writeLong(id);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            io.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Runs on the io thread: one append and one fsync for everything buffered so far.
+     */
+    private void flush() {
+        byte[] batch;
+        boolean compact;
+        synchronized (this) {
+            batch = pendingBytes.toByteArray();
+            pendingBytes.reset();
+            flushScheduled = false;
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(batch);
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing outbox", e);
+        }
+        synchronized (this) {
+            compact = file.length() > COMPACT_THRESHOLD_BYTES && pendingBytes.size() == 0;
+        }
+        if (compact) {
+            compact();
+        }
+    }
+
+    private synchronized void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte type = in.readByte();
+                long id = in.readLong();
+                if (type == RECORD_ENQUEUE) {
+                    long createdAt = in.readLong();
+                    byte[] address = new byte[in.readUnsignedShort()];
+                    in.readFully(address);
+                    byte[] frame = new byte[in.readInt()];
+                    in.readFully(frame);
+                    entries.put(id, new Entry(id, new String(address, StandardCharsets.UTF_8), frame, createdAt));
+                    validLength += 1 + 8 + 8 + 2 + address.length + 4 + frame.length;
+                } else if (type == RECORD_DONE) {
+                    entries.remove(id);
+                    validLength += 1 + 8;
+                } else {
+                    throw new IOException("Unknown record type " + type);
+                }
+                nextId = Math.max(nextId, id + 1);
+            }
+        } catch (EOFException e) {
+            // End of log, possibly a record cut short by a crash
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Outbox log is damaged after " + validLength + " bytes", e);
+        }
+        if (validLength < file.length()) {
+            truncate(validLength);
+        }
+        Log.d(TAG, "Loaded " + entries.size() + " pending command(s)");
+    }
+
+    private void truncate(long length) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        } catch (IOException e) {
+            Log.e(TAG, "Error truncating outbox", e);
+        }
+    }
+
+    /**
+     * Runs on the io thread: replace the log with one holding just the pending entries.
+     */
+    private void compact() {
+        File tmp = new File(file.getPath() + ".tmp");
+        synchronized (this) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream records = new DataOutputStream(bytes);
+            try {
+                for (Entry entry : entries.values()) {
+                    byte[] address = entry.address.getBytes(StandardCharsets.UTF_8);
+                    records.writeByte(RECORD_ENQUEUE);
+                    records.writeLong(entry.id);
+                    records.writeLong(entry.createdAt);
+                    records.writeShort(address.length);
+                    records.write(address);
+                    records.writeInt(entry.frame.length);
+                    records.write(entry.frame);
+                }
+                try (FileOutputStream out = new FileOutputStream(tmp)) {
+                    out.write(bytes.toByteArray());
+                    out.getFD().sync();
+                }
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Could not replace " + file);
+                }
+                Log.d(TAG, "Compacted outbox to " + entries.size() + " entr(ies)");
+            } catch (IOException e) {
+                Log.e(TAG, "Error compacting outbox", e);
+                tmp.delete();
+            }
+        }
+    }
+
+    public static final class Entry {
+        private final long id;
+        private final String address;
+        private final byte[] frame;
+        private final long createdAt;
+
+        Entry(long id, String address, byte[] frame, long createdAt) {
+            this.id = id;
+            this.address = address;
+            this.frame = frame;
+            this.createdAt = createdAt;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        /**
+         * The frame as built; must not be modified
+         */
+        public byte[] getFrame() {
+            return frame;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+    }
+}
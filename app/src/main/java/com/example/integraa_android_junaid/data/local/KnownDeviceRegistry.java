@@ -0,0 +1,275 @@
+package com.example.integraa_android_junaid.data.local;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every meter this app has connected to, with what the last connection learned about it:
+ * negotiated MTU, a hash of its GATT service layout and the write types it supports, plus
+ * its latest name and signal strength. Lets the device list show known meters without
+ * scanning and lets a connection skip steps whose outcome is already known.
+ *
+ * Kept in memory and saved to a JSON file by a background thread; changes within
+ * {@link #SAVE_DELAY_MS} share one write.
+ */
+public class KnownDeviceRegistry {
+    private static final String TAG = "KnownDeviceRegistry";
+    private static final String FILE_NAME = "known_devices.json";
+    private static final long SAVE_DELAY_MS = 2000;
+    private static final int MAX_DEVICES = 200;
+
+    private final File file;
+    private final Gson gson = new Gson();
+    private final ScheduledExecutorService io = Executors.newSingleThreadScheduledExecutor();
+    // Least recently connected first, so the oldest entry is dropped when full
+    private final Map<String, KnownDevice> devices = new LinkedHashMap<>();
+    private boolean loaded = false;
+    private boolean saveScheduled = false;
+
+    public KnownDeviceRegistry(Context context) {
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+        // Read the file off the main thread before the first connection needs it
+        io.execute(this::ensureLoaded);
+    }
+
+    /**
+     * @return A copy of what is known about the device, or null if it never connected
+     */
+    public synchronized KnownDevice get(String address) {
+        ensureLoaded();
+        KnownDevice device = address != null ? devices.get(address) : null;
+        return device != null ? device.copy() : null;
+    }
+
+    /**
+     * Known devices, most recently connected first.
+     */
+    public synchronized List<KnownDevice> getAll() {
+        ensureLoaded();
+        List<KnownDevice> all = new ArrayList<>(devices.size());
+        for (KnownDevice device : devices.values()) {
+            all.add(0, device.copy());
+        }
+        return all;
+    }
+
+    /**
+     * A link to the device became ready.
+     * @param layoutHash Hash of the service table the link used
+     */
+    public synchronized void recordConnected(String address, int mtu, String layoutHash,
+                                             boolean supportsWrite, boolean supportsWriteNoResponse,
+                                             boolean supportsReplies) {
+        ensureLoaded();
+        KnownDevice device = devices.remove(address);
+        if (device == null) {
+            device = new KnownDevice(address);
+        }
+        device.mtu = mtu;
+        device.layoutHash = layoutHash;
+        device.supportsWrite = supportsWrite;
+        device.supportsWriteNoResponse = supportsWriteNoResponse;
+        device.supportsReplies = supportsReplies;
+        device.lastConnectedAt = System.currentTimeMillis();
+        devices.put(address, device);
+        while (devices.size() > MAX_DEVICES) {
+            devices.remove(devices.keySet().iterator().next());
+        }
+        scheduleSave();
+    }
+
+    /**
+     * A scan saw a device; ignored unless it is a known one.
+     * @param name Advertised name, or null to keep the stored one
+     */
+    public synchronized void recordSeen(String address, String name, int rssi) {
+        ensureLoaded();
+        KnownDevice device = devices.get(address);
+        if (device == null) {
+            return;
+        }
+        if (name != null) {
+            device.name = name;
+        }
+        device.rssi = rssi;
+        device.lastSeenAt = System.currentTimeMillis();
+        scheduleSave();
+    }
+
+    /**
+     * The cached layout turned out wrong; the next connection discovers services again.
+     */
+    public synchronized void invalidateLayout(String address) {
+        ensureLoaded();
+        KnownDevice device = devices.get(address);
+        if (device != null && device.layoutHash != null) {
+            device.layoutHash = null;
+            scheduleSave();
+        }
+    }
+
+    public synchronized void forget(String address) {
+        ensureLoaded();
+        if (devices.remove(address) != null) {
+            scheduleSave();
+        }
+    }
+
+    private void scheduleSave() {
+        if (!saveScheduled) {
+            saveScheduled = true;
+            io.schedule(this::save, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Runs on the io thread: write a fresh file and swap it in.
+     */
+    private void save() {
+        String json;
+        synchronized (this) {
+            saveScheduled = false;
+            json = gson.toJson(new ArrayList<>(devices.values()));
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            writer.write(json);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving known devices", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "Could not replace " + file);
+            tmp.delete();
+        }
+    }
+
+    private synchronized void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            List<KnownDevice> stored = gson.fromJson(reader, new TypeToken<List<KnownDevice>>() { }.getType());
+            if (stored != null) {
+                for (KnownDevice device : stored) {
+                    if (device != null && device.address != null) {
+                        devices.put(device.address, device);
+                    }
+                }
+            }
+            Log.d(TAG, "Loaded " + devices.size() + " known device(s)");
+        } catch (Exception e) {
+            // Only a cache; start over rather than fail connections
+            Log.e(TAG, "Error loading known devices", e);
+            devices.clear();
+        }
+    }
+
+    public static final class KnownDevice {
+        private String address;
+        private String name;
+        private Integer rssi;
+        private long lastSeenAt;
+        private long lastConnectedAt;
+        private int mtu;
+        private String layoutHash;
+        private boolean supportsWrite;
+        private boolean supportsWriteNoResponse;
+        private boolean supportsReplies;
+
+        KnownDevice(String address) {
+            this.address = address;
+        }
+
+        KnownDevice copy() {
+            KnownDevice copy = new KnownDevice(address);
+            copy.name = name;
+            copy.rssi = rssi;
+            copy.lastSeenAt = lastSeenAt;
+            copy.lastConnectedAt = lastConnectedAt;
+            copy.mtu = mtu;
+            copy.layoutHash = layoutHash;
+            copy.supportsWrite = supportsWrite;
+            copy.supportsWriteNoResponse = supportsWriteNoResponse;
+            copy.supportsReplies = supportsReplies;
+            return copy;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        /**
+         * Latest advertised name, or null if no scan saw one
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Signal strength when a scan last saw the device, or null
+         */
+        public Integer getRssi() {
+            return rssi;
+        }
+
+        public long getLastSeenAt() {
+            return lastSeenAt;
+        }
+
+        public long getLastConnectedAt() {
+            return lastConnectedAt;
+        }
+
+        /**
+         * ATT MTU the last connection ended up with
+         */
+        public int getMtu() {
+            return mtu;
+        }
+
+        /**
+         * Hash of the service layout, or null if it has to be discovered again
+         */
+        public String getLayoutHash() {
+            return layoutHash;
+        }
+
+        public boolean supportsWrite() {
+            return supportsWrite;
+        }
+
+        public boolean supportsWriteNoResponse() {
+            return supportsWriteNoResponse;
+        }
+
+        public boolean supportsReplies() {
+            return supportsReplies;
+        }
+    }
+}
@@ -1,21 +1,42 @@
 package com.example.integraa_android_junaid.data.repository;
 
+import android.util.Log;
+
 import com.example.integraa_android_junaid.data.api.ApiService;
+import com.example.integraa_android_junaid.data.api.models.Action;
+import com.example.integraa_android_junaid.data.api.models.Command;
+import com.example.integraa_android_junaid.data.api.models.Parameter;
 import com.example.integraa_android_junaid.data.api.models.PermissionResponse;
 import com.example.integraa_android_junaid.data.local.SharedPreferencesManager;
+import com.example.integraa_android_junaid.domain.model.PayloadTemplateCache;
+import com.example.integraa_android_junaid.util.ParameterValidatorCache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
 
 public class PermissionRepository {
+    private static final String TAG = "PermissionRepository";
     private final ApiService apiService;
     private final SharedPreferencesManager preferencesManager;
+    private final PayloadTemplateCache templateCache;
+    private final ParameterValidatorCache validatorCache;
+    // Compiling a whole permission tree takes a while on older phones; keep it off the
+    // main thread, where Retrofit delivers the response
+    private final ExecutorService cacheWarmer = Executors.newSingleThreadExecutor();
     private PermissionResponse cachedPermissions;
 
-    public PermissionRepository(ApiService apiService, SharedPreferencesManager preferencesManager) {
+    public PermissionRepository(ApiService apiService, SharedPreferencesManager preferencesManager, PayloadTemplateCache templateCache,
+                                ParameterValidatorCache validatorCache) {
         this.apiService = apiService;
         this.preferencesManager = preferencesManager;
+        this.templateCache = templateCache;
+        this.validatorCache = validatorCache;
     }
 
     public void getPermissions(PermissionsCallback callback) {
@@ -38,6 +59,8 @@ public class PermissionRepository {
                 if (response.isSuccessful() && response.body() != null) {
                     cachedPermissions = response.body();
                     preferencesManager.saveLastPermissionsFetchTime(System.currentTimeMillis());
+                    PermissionResponse permissions = cachedPermissions;
+                    cacheWarmer.execute(() -> warmCaches(permissions));
                     callback.onSuccess(cachedPermissions);
                 } else {
                     // Handle session expiry
@@ -69,10 +92,78 @@ public class PermissionRepository {
 
     public void forceRefresh(PermissionsCallback callback) {
         cachedPermissions = null;
+        templateCache.clear();
+        validatorCache.clear();
         preferencesManager.saveLastPermissionsFetchTime(0);
         getPermissions(callback);
     }
 
+    /**
+     * Compile every command payload and parameter validator of the new permission tree,
+     * replacing those of the previous tree. Runs on the cache warmer; a send that comes
+     * first compiles its own payload on demand.
+     */
+    private void warmCaches(PermissionResponse permissions) {
+        templateCache.clear();
+        validatorCache.clear();
+        if (permissions.getActions() == null) {
+            return;
+        }
+        for (Action action : permissions.getActions()) {
+            if (action == null || action.getItems() == null) {
+                continue;
+            }
+            for (Command command : action.getItems()) {
+                if (command == null || command.getPayload() == null) {
+                    continue;
+                }
+                try {
+                    templateCache.warm(command.getPayload(), toDomainParameters(command.getParameters()));
+                } catch (IllegalArgumentException e) {
+                    // Built on demand instead; the send then reports the format error
+                    Log.w(TAG, "Could not compile payload of " + command.getLabel() + ": " + e.getMessage());
+                }
+                warmValidators(command.getParameters());
+            }
+        }
+        Log.d(TAG, "Compiled " + templateCache.size() + " payload template(s) and "
+                + validatorCache.size() + " validator(s)");
+    }
+
+    private void warmValidators(Map<String, Parameter> parameters) {
+        if (parameters == null) {
+            return;
+        }
+        for (Parameter param : parameters.values()) {
+            if (param != null && !"checksum".equalsIgnoreCase(param.getType())) {
+                validatorCache.get(param.getRequired(), param.getType(), param.getMin(), param.getMax());
+            }
+        }
+    }
+
+    private static Map<String, com.example.integraa_android_junaid.domain.model.Parameter> toDomainParameters(Map<String, Parameter> parameters) {
+        Map<String, com.example.integraa_android_junaid.domain.model.Parameter> definitions = new HashMap<>();
+        if (parameters == null) {
+            return definitions;
+        }
+        for (Map.Entry<String, Parameter> entry : parameters.entrySet()) {
+            Parameter param = entry.getValue();
+            if (entry.getKey() == null || param == null) {
+                continue;
+            }
+            definitions.put(entry.getKey(), new com.example.integraa_android_junaid.domain.model.Parameter(
+                    entry.getKey(),
+                    param.getLabel(),
+                    param.getType(),
+                    param.getValue(),
+                    param.getRequired(),
+                    param.getMin(),
+                    param.getMax()
+            ));
+        }
+        return definitions;
+    }
+
     public PermissionResponse getCachedPermissions() {
         return cachedPermissions;
     }
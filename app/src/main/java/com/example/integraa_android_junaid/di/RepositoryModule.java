@@ -4,14 +4,23 @@ import android.content.Context;
 
 import com.example.integraa_android_junaid.data.api.ApiService;
 import com.example.integraa_android_junaid.data.bluetooth.BluetoothManager;
+import com.example.integraa_android_junaid.data.bluetooth.BluetoothSessionManager;
+import com.example.integraa_android_junaid.data.local.AuditLog;
+import com.example.integraa_android_junaid.data.local.CommandOutbox;
+import com.example.integraa_android_junaid.data.local.KnownDeviceRegistry;
 import com.example.integraa_android_junaid.data.local.SharedPreferencesManager;
 import com.example.integraa_android_junaid.data.repository.AuthRepository;
 import com.example.integraa_android_junaid.data.repository.PermissionRepository;
 import com.example.integraa_android_junaid.domain.model.PayloadBuilder;
+import com.example.integraa_android_junaid.domain.model.PayloadTemplateCache;
 import com.example.integraa_android_junaid.domain.usecase.CalculateChecksumUseCase;
 import com.example.integraa_android_junaid.domain.usecase.GetPermissionsUseCase;
 import com.example.integraa_android_junaid.domain.usecase.LoginUseCase;
+import com.example.integraa_android_junaid.domain.usecase.ProvisionFleetUseCase;
 import com.example.integraa_android_junaid.domain.usecase.SendCommandUseCase;
+import com.example.integraa_android_junaid.service.BleJobRunner;
+import com.example.integraa_android_junaid.service.BleServiceController;
+import com.example.integraa_android_junaid.util.ParameterValidatorCache;
 
 import javax.inject.Singleton;
 
@@ -33,14 +42,29 @@ public class RepositoryModule {
 
     @Provides
     @Singleton
-    PermissionRepository providePermissionRepository(ApiService apiService, SharedPreferencesManager preferencesManager) {
-        return new PermissionRepository(apiService, preferencesManager);
+    PermissionRepository providePermissionRepository(ApiService apiService, SharedPreferencesManager preferencesManager, PayloadTemplateCache templateCache,
+                                                      ParameterValidatorCache validatorCache) {
+        return new PermissionRepository(apiService, preferencesManager, templateCache, validatorCache);
     }
 
     @Provides
     @Singleton
-    BluetoothManager provideBluetoothManager(@ApplicationContext Context context) {
-        return new BluetoothManager(context);
+    BluetoothManager provideBluetoothManager(@ApplicationContext Context context, CalculateChecksumUseCase calculateChecksumUseCase,
+                                             KnownDeviceRegistry knownDevices) {
+        // Meter replies end with a CheckSum8 over the preceding bytes, like the commands we send
+        return new BluetoothManager(context, calculateChecksumUseCase::verify, knownDevices);
+    }
+
+    @Provides
+    @Singleton
+    KnownDeviceRegistry provideKnownDeviceRegistry(@ApplicationContext Context context) {
+        return new KnownDeviceRegistry(context);
+    }
+
+    @Provides
+    @Singleton
+    BluetoothSessionManager provideBluetoothSessionManager(BluetoothManager bluetoothManager) {
+        return new BluetoothSessionManager(bluetoothManager);
     }
 
     @Provides
@@ -51,8 +75,20 @@ public class RepositoryModule {
 
     @Provides
     @Singleton
-    PayloadBuilder providePayloadBuilder(CalculateChecksumUseCase calculateChecksumUseCase) {
-        return new PayloadBuilder(calculateChecksumUseCase);
+    PayloadTemplateCache providePayloadTemplateCache() {
+        return new PayloadTemplateCache();
+    }
+
+    @Provides
+    @Singleton
+    ParameterValidatorCache provideParameterValidatorCache() {
+        return new ParameterValidatorCache();
+    }
+
+    @Provides
+    @Singleton
+    PayloadBuilder providePayloadBuilder(CalculateChecksumUseCase calculateChecksumUseCase, PayloadTemplateCache templateCache) {
+        return new PayloadBuilder(calculateChecksumUseCase, templateCache);
     }
 
     @Provides
@@ -69,8 +105,39 @@ public class RepositoryModule {
 
     @Provides
     @Singleton
-    SendCommandUseCase provideSendCommandUseCase(BluetoothManager bluetoothManager, PayloadBuilder payloadBuilder) {
-        return new SendCommandUseCase(bluetoothManager, payloadBuilder);
+    CommandOutbox provideCommandOutbox(@ApplicationContext Context context) {
+        return new CommandOutbox(context);
+    }
+
+    @Provides
+    @Singleton
+    AuditLog provideAuditLog(@ApplicationContext Context context) {
+        return new AuditLog(context);
+    }
+
+    @Provides
+    @Singleton
+    BleServiceController provideBleServiceController(@ApplicationContext Context context) {
+        return new BleServiceController(context);
+    }
+
+    @Provides
+    @Singleton
+    SendCommandUseCase provideSendCommandUseCase(BluetoothManager bluetoothManager, BluetoothSessionManager sessionManager, PayloadBuilder payloadBuilder, CommandOutbox commandOutbox, AuditLog auditLog) {
+        return new SendCommandUseCase(bluetoothManager, sessionManager, payloadBuilder, commandOutbox, auditLog);
+    }
+
+    @Provides
+    @Singleton
+    ProvisionFleetUseCase provideProvisionFleetUseCase(BluetoothManager bluetoothManager, SendCommandUseCase sendCommandUseCase) {
+        return new ProvisionFleetUseCase(bluetoothManager, sendCommandUseCase);
+    }
+
+    @Provides
+    @Singleton
+    BleJobRunner provideBleJobRunner(BluetoothManager bluetoothManager, BluetoothSessionManager sessionManager, SendCommandUseCase sendCommandUseCase,
+                                     ProvisionFleetUseCase provisionFleetUseCase, BleServiceController serviceController) {
+        return new BleJobRunner(bluetoothManager, sessionManager, sendCommandUseCase, provisionFleetUseCase, serviceController);
     }
 }
 
@@ -0,0 +1,229 @@
+package com.example.integraa_android_junaid.domain.model;
+
+import java.util.Locale;
+
+/**
+ * A frame checksum that can be updated segment by segment as a frame is written.
+ * The running state is a plain int, so checksumming allocates nothing; the CRCs are
+ * table driven (one lookup per byte).
+ *
+ * Selected by the {@code value} of a "checksum" parameter, e.g.
+ * {@code {"type": "checksum", "value": "crc16modbus"}}; see {@link #forName}.
+ */
+public abstract class ChecksumEngine {
+
+    /**
+     * CheckSum8 Modulo 256: sum of all bytes, 1 byte. The meters' original checksum.
+     */
+    public static final ChecksumEngine SUM8 = new ChecksumEngine("sum8", 1) {
+        @Override
+        public int init() {
+            return 0;
+        }
+
+        @Override
+        public int update(int state, byte[] bytes, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                state += bytes[i] & 0xFF;
+            }
+            return state & 0xFF;
+        }
+
+        @Override
+        public int write(int state, byte[] out, int position) {
+            out[position] = (byte) state;
+            return position + 1;
+        }
+    };
+
+    /**
+     * CRC-16/MODBUS: reflected polynomial 0xA001, init 0xFFFF, 2 bytes, low byte first.
+     */
+    public static final ChecksumEngine CRC16_MODBUS = new ChecksumEngine("crc16modbus", 2) {
+        private final int[] table = reflectedTable16(0xA001);
+
+        @Override
+        public int init() {
+            return 0xFFFF;
+        }
+
+        @Override
+        public int update(int crc, byte[] bytes, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                crc = (crc >>> 8) ^ table[(crc ^ bytes[i]) & 0xFF];
+            }
+            return crc;
+        }
+
+        @Override
+        public int write(int crc, byte[] out, int position) {
+            out[position] = (byte) crc;
+            out[position + 1] = (byte) (crc >>> 8);
+            return position + 2;
+        }
+    };
+
+    /**
+     * CRC-8 (SMBus): polynomial 0x07, init 0x00, 1 byte.
+     */
+    public static final ChecksumEngine CRC8 = new Crc8("crc8", table8(0x07));
+
+    /**
+     * CRC-8/MAXIM (Dallas 1-Wire): reflected polynomial 0x8C, init 0x00, 1 byte.
+     */
+    public static final ChecksumEngine CRC8_MAXIM = new Crc8("crc8maxim", reflectedTable8(0x8C));
+
+    private final String name;
+    private final int size;
+
+    private ChecksumEngine(String name, int size) {
+        this.name = name;
+        this.size = size;
+    }
+
+    /**
+     * Resolve a checksum name as sent by the server. Case, '-', '_' and '/' are ignored
+     * ("CRC-16/MODBUS" works). Null and unknown names, including the value types older
+     * permission trees put on checksum parameters, mean {@link #SUM8}.
+     */
+    public static ChecksumEngine forName(String name) {
+        if (name == null) {
+            return SUM8;
+        }
+        StringBuilder normalized = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(c);
+            }
+        }
+        switch (normalized.toString().toLowerCase(Locale.ROOT)) {
+            case "crc16modbus":
+            case "modbus":
+                return CRC16_MODBUS;
+            case "crc8":
+            case "crc8smbus":
+                return CRC8;
+            case "crc8maxim":
+            case "crc8dallas":
+                return CRC8_MAXIM;
+            default:
+                return SUM8;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Number of bytes the checksum takes in a frame.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The state before any byte has been added
+     */
+    public abstract int init();
+
+    /**
+     * Add bytes to a running checksum.
+     * @return The new state
+     */
+    public abstract int update(int state, byte[] bytes, int offset, int length);
+
+    /**
+     * Write the checksum for this state in the frame's byte order.
+     * @return Position after the checksum
+     */
+    public abstract int write(int state, byte[] out, int position);
+
+    /**
+     * Checksum of a byte range, as an unsigned value.
+     */
+    public int compute(byte[] bytes, int offset, int length) {
+        return update(init(), bytes, offset, length);
+    }
+
+    /**
+     * Check a frame that ends with this checksum over all bytes before it.
+     * @param length Number of valid bytes in the buffer
+     */
+    public boolean verify(byte[] frame, int length) {
+        if (frame == null || length <= size || length > frame.length) {
+            return false;
+        }
+        int state = compute(frame, 0, length - size);
+        for (int i = 0; i < size; i++) {
+            // write() order: single byte, or low byte first for CRC-16/MODBUS
+            if ((frame[length - size + i] & 0xFF) != ((state >>> (8 * i)) & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static final class Crc8 extends ChecksumEngine {
+        private final int[] table;
+
+        Crc8(String name, int[] table) {
+            super(name, 1);
+            this.table = table;
+        }
+
+        @Override
+        public int init() {
+            return 0;
+        }
+
+        @Override
+        public int update(int crc, byte[] bytes, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                crc = table[(crc ^ bytes[i]) & 0xFF];
+            }
+            return crc;
+        }
+
+        @Override
+        public int write(int crc, byte[] out, int position) {
+            out[position] = (byte) crc;
+            return position + 1;
+        }
+    }
+
+    private static int[] reflectedTable16(int polynomial) {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ polynomial : crc >>> 1;
+            }
+            table[i] = crc;
+        }
+        return table;
+    }
+
+    private static int[] reflectedTable8(int polynomial) {
+        // Same shift-right construction; the values stay within 8 bits
+        return reflectedTable16(polynomial);
+    }
+
+    private static int[] table8(int polynomial) {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80) != 0 ? ((crc << 1) ^ polynomial) & 0xFF : (crc << 1) & 0xFF;
+            }
+            table[i] = crc;
+        }
+        return table;
+    }
+}
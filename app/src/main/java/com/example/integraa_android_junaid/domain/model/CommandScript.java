@@ -0,0 +1,49 @@
+package com.example.integraa_android_junaid.domain.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An ordered list of commands with their parameter values, sent to one meter in a
+ * single session (e.g. commissioning: IP, port, meter ID, reporting interval).
+ */
+public class CommandScript {
+    private final List<Step> steps = new ArrayList<>();
+
+    /**
+     * @param command The command to send; its parameters are the definitions
+     * @param parameterValues Values by parameter key, as entered in the command dialog
+     */
+    public CommandScript addStep(Command command, Map<String, String> parameterValues) {
+        steps.add(new Step(command, parameterValues));
+        return this;
+    }
+
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    public int size() {
+        return steps.size();
+    }
+
+    public static class Step {
+        private final Command command;
+        private final Map<String, String> parameterValues;
+
+        Step(Command command, Map<String, String> parameterValues) {
+            this.command = command;
+            this.parameterValues = parameterValues;
+        }
+
+        public Command getCommand() {
+            return command;
+        }
+
+        public Map<String, String> getParameterValues() {
+            return parameterValues;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.integraa_android_junaid.domain.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a {@link CommandScript}: one result per step, in script order, and the time
+ * from the first frame going out to the last step completing.
+ */
+public class CommandScriptResult {
+    private final List<StepResult> steps;
+    private final long totalDurationMs;
+
+    public CommandScriptResult(List<StepResult> steps, long totalDurationMs) {
+        this.steps = Collections.unmodifiableList(steps);
+        this.totalDurationMs = totalDurationMs;
+    }
+
+    public List<StepResult> getSteps() {
+        return steps;
+    }
+
+    public long getTotalDurationMs() {
+        return totalDurationMs;
+    }
+
+    public boolean isSuccess() {
+        return getFailedCount() == 0;
+    }
+
+    public int getFailedCount() {
+        int failed = 0;
+        for (StepResult step : steps) {
+            if (!step.isSuccess()) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    public static class StepResult {
+        private final String label;
+        private final boolean success;
+        private final String payload;
+        private final String response;
+        private final String errorMessage;
+        private final long latencyMs;
+
+        public StepResult(String label, boolean success, String payload, String response, String errorMessage, long latencyMs) {
+            this.label = label;
+            this.success = success;
+            this.payload = payload;
+            this.response = response;
+            this.errorMessage = errorMessage;
+            this.latencyMs = latencyMs;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        /**
+         * The frame that was sent, as hex
+         */
+        public String getPayload() {
+            return payload;
+        }
+
+        /**
+         * The meter's reply as hex, or null if the meter only acknowledged the write
+         */
+        public String getResponse() {
+            return response;
+        }
+
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+
+        public long getLatencyMs() {
+            return latencyMs;
+        }
+    }
+}
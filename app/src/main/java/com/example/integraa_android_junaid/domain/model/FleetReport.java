@@ -0,0 +1,65 @@
+package com.example.integraa_android_junaid.domain.model;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Snapshot of a fleet provisioning job: how many meters are done, which ones failed
+ * for good (with the last error) and the throughput so far.
+ */
+public class FleetReport {
+    private final int total;
+    private final int succeeded;
+    private final int inProgress;
+    private final Map<String, String> failures;
+    private final long elapsedMs;
+
+    public FleetReport(int total, int succeeded, int inProgress, Map<String, String> failures, long elapsedMs) {
+        this.total = total;
+        this.succeeded = succeeded;
+        this.inProgress = inProgress;
+        this.failures = Collections.unmodifiableMap(failures);
+        this.elapsedMs = elapsedMs;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return failures.size();
+    }
+
+    /**
+     * Meters with a session open or a script running right now
+     */
+    public int getInProgress() {
+        return inProgress;
+    }
+
+    /**
+     * Meters that failed after their last attempt, by address, with the error of that attempt
+     */
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    /**
+     * Successfully provisioned meters per minute of job time
+     */
+    public double getMetersPerMinute() {
+        return elapsedMs > 0 ? succeeded * 60000.0 / elapsedMs : 0;
+    }
+
+    public boolean isFinished() {
+        return succeeded + failures.size() == total;
+    }
+}
@@ -9,9 +9,11 @@ import java.util.regex.Pattern;
 
 public class PayloadBuilder {
     private final CalculateChecksumUseCase calculateChecksumUseCase;
+    private final PayloadTemplateCache templateCache;
 
-    public PayloadBuilder(CalculateChecksumUseCase calculateChecksumUseCase) {
+    public PayloadBuilder(CalculateChecksumUseCase calculateChecksumUseCase, PayloadTemplateCache templateCache) {
         this.calculateChecksumUseCase = calculateChecksumUseCase;
+        this.templateCache = templateCache;
     }
 
     /**
@@ -141,5 +143,14 @@ public class PayloadBuilder {
 
         return result;
     }
-}
 
+    /**
+     * Build the final frame as bytes. The payload's compiled {@link PayloadTemplate} comes from
+     * the template cache and the values and checksum are written straight into the result,
+     * without the string replacement and hex round-trip of {@link #buildPayload}.
+     * @throws IllegalArgumentException if the payload or a value is malformed
+     */
+    public byte[] buildFrame(String payload, Map<String, String> parameterValues, Map<String, Parameter> parameterDefinitions) {
+        return templateCache.get(payload, parameterDefinitions).build(parameterValues);
+    }
+}
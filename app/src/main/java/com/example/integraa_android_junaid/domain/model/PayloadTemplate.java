@@ -0,0 +1,233 @@
+package com.example.integraa_android_junaid.domain.model;
+
+import com.example.integraa_android_junaid.util.HexCodec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A command payload compiled once into literal byte segments and typed value slots.
+ * Each value slot gets its {@link ValueEncoder} when the template is compiled, so
+ * building a frame writes the literal bytes, the encoded parameter values and the
+ * checksum straight into a byte array; no intermediate hex strings are created.
+ * The checksum is updated segment by segment as the frame is written.
+ */
+public final class PayloadTemplate {
+    private static final int SEGMENT_LITERAL = 0;
+    private static final int SEGMENT_VALUE = 1;
+    private static final int SEGMENT_CHECKSUM = 2;
+
+    private final String payload;
+    private final int[] kinds;
+    private final byte[][] literals;
+    private final String[] keys;
+    private final ValueEncoder[] encoders;
+    private final ChecksumEngine[] checksums;
+    // Engine of the first checksum slot at or after each segment index, null if none follows
+    private final ChecksumEngine[] nextChecksums;
+    private final int literalLength;
+
+    private PayloadTemplate(String payload, int[] kinds, byte[][] literals, String[] keys,
+                            ValueEncoder[] encoders, ChecksumEngine[] checksums, int literalLength) {
+        this.payload = payload;
+        this.kinds = kinds;
+        this.literals = literals;
+        this.keys = keys;
+        this.encoders = encoders;
+        this.checksums = checksums;
+        this.literalLength = literalLength;
+        this.nextChecksums = new ChecksumEngine[kinds.length + 1];
+        for (int s = kinds.length - 1; s >= 0; s--) {
+            nextChecksums[s] = checksums[s] != null ? checksums[s] : nextChecksums[s + 1];
+        }
+    }
+
+    /**
+     * Compile with the default {@link ValueEncoderRegistry}.
+     * @see #compile(String, Map, ValueEncoderRegistry)
+     */
+    public static PayloadTemplate compile(String payload, Map<String, Parameter> parameterDefinitions) {
+        return compile(payload, parameterDefinitions, ValueEncoderRegistry.getDefault());
+    }
+
+    /**
+     * Parse a payload such as {@code 68{MeterID}01{IP1}{CHK}16}.
+     * @param payload Hex payload with {Key} placeholders
+     * @param parameterDefinitions Parameter definitions by key, used for value types and to
+     *                             find the checksum parameter and its algorithm; may be null
+     * @param registry Resolves each parameter's value type to its encoder
+     * @throws IllegalArgumentException if the literal parts are not whole hex bytes
+     */
+    public static PayloadTemplate compile(String payload, Map<String, Parameter> parameterDefinitions,
+                                          ValueEncoderRegistry registry) {
+        if (payload == null) {
+            throw new IllegalArgumentException("Payload cannot be null");
+        }
+        List<Integer> kinds = new ArrayList<>();
+        List<byte[]> literals = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<ValueEncoder> encoders = new ArrayList<>();
+        List<ChecksumEngine> checksums = new ArrayList<>();
+        int literalLength = 0;
+
+        int i = 0;
+        int length = payload.length();
+        while (i < length) {
+            int open = payload.indexOf('{', i);
+            int literalEnd = open < 0 ? length : open;
+            if (literalEnd > i) {
+                byte[] literal = parseLiteral(payload, i, literalEnd);
+                if (literal.length > 0) {
+                    kinds.add(SEGMENT_LITERAL);
+                    literals.add(literal);
+                    keys.add(null);
+                    encoders.add(null);
+                    checksums.add(null);
+                    literalLength += literal.length;
+                }
+            }
+            if (open < 0) {
+                break;
+            }
+            int close = payload.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unterminated placeholder in payload");
+            }
+            String key = payload.substring(open + 1, close);
+            Parameter param = parameterDefinitions != null ? parameterDefinitions.get(key) : null;
+            literals.add(null);
+            keys.add(key);
+            if (isChecksumSlot(key, param)) {
+                ChecksumEngine engine = ChecksumEngine.forName(param != null ? param.getValue() : null);
+                kinds.add(SEGMENT_CHECKSUM);
+                encoders.add(null);
+                checksums.add(engine);
+                literalLength += engine.size();
+            } else {
+                kinds.add(SEGMENT_VALUE);
+                encoders.add(registry.resolve(param != null ? param.getValue() : null));
+                checksums.add(null);
+            }
+            i = close + 1;
+        }
+
+        int[] kindArray = new int[kinds.size()];
+        for (int k = 0; k < kindArray.length; k++) {
+            kindArray[k] = kinds.get(k);
+        }
+        return new PayloadTemplate(payload, kindArray, literals.toArray(new byte[0][]),
+                keys.toArray(new String[0]), encoders.toArray(new ValueEncoder[0]),
+                checksums.toArray(new ChecksumEngine[0]), literalLength);
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    /**
+     * Number of bytes {@link #writeTo} will produce for these values.
+     */
+    public int encodedLength(Map<String, String> parameterValues) {
+        int total = literalLength;
+        for (int s = 0; s < kinds.length; s++) {
+            if (kinds[s] == SEGMENT_VALUE) {
+                total += encoders[s].encodedLength(requireValue(parameterValues, keys[s]));
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Build the frame into a new array of exactly the right size.
+     */
+    public byte[] build(Map<String, String> parameterValues) {
+        byte[] out = new byte[encodedLength(parameterValues)];
+        writeTo(parameterValues, out, 0);
+        return out;
+    }
+
+    /**
+     * Write the frame into a caller-owned buffer, e.g. one reused across a batch of frames.
+     * Checksum slots cover every byte written before them, starting at {@code offset}.
+     * @return Number of bytes written
+     * @throws IllegalArgumentException if a value is missing or malformed
+     */
+    public int writeTo(Map<String, String> parameterValues, byte[] out, int offset) {
+        int position = offset;
+        ChecksumEngine engine = nextChecksums[0];
+        int state = engine != null ? engine.init() : 0;
+        for (int s = 0; s < kinds.length; s++) {
+            int start = position;
+            switch (kinds[s]) {
+                case SEGMENT_LITERAL:
+                    byte[] literal = literals[s];
+                    System.arraycopy(literal, 0, out, position, literal.length);
+                    position += literal.length;
+                    break;
+                case SEGMENT_CHECKSUM:
+                    position = checksums[s].write(state, out, position);
+                    // A later checksum slot also covers this one; rare, so it just starts over
+                    engine = nextChecksums[s + 1];
+                    if (engine != null) {
+                        state = engine.compute(out, offset, position - offset);
+                    }
+                    continue;
+                default:
+                    position = encoders[s].write(requireValue(parameterValues, keys[s]), out, position);
+                    break;
+            }
+            if (engine != null) {
+                state = engine.update(state, out, start, position - start);
+            }
+        }
+        return position - offset;
+    }
+
+    private static boolean isChecksumSlot(String key, Parameter param) {
+        if (param != null && "checksum".equalsIgnoreCase(param.getType())) {
+            return true;
+        }
+        // Backward compatibility with templates that use {CHK} without a checksum parameter
+        return "CHK".equalsIgnoreCase(key);
+    }
+
+    private static String requireValue(Map<String, String> parameterValues, String key) {
+        String value = parameterValues != null ? parameterValues.get(key) : null;
+        if (value == null) {
+            throw new IllegalArgumentException("Missing value for " + key);
+        }
+        return value;
+    }
+
+    private static byte[] parseLiteral(String payload, int start, int end) {
+        byte[] bytes = new byte[(end - start) / 2];
+        int count = 0;
+        int high = -1;
+        for (int i = start; i < end; i++) {
+            char c = payload.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            int digit = HexCodec.digit(c);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid hex character in payload: " + c);
+            }
+            if (high < 0) {
+                high = digit;
+            } else {
+                bytes[count++] = (byte) ((high << 4) | digit);
+                high = -1;
+            }
+        }
+        if (high >= 0) {
+            throw new IllegalArgumentException("Payload literal is not made of whole bytes");
+        }
+        if (count == bytes.length) {
+            return bytes;
+        }
+        byte[] trimmed = new byte[count];
+        System.arraycopy(bytes, 0, trimmed, 0, count);
+        return trimmed;
+    }
+}
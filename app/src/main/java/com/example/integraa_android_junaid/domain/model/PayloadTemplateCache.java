@@ -0,0 +1,100 @@
+package com.example.integraa_android_junaid.domain.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of compiled {@link PayloadTemplate}s, keyed by the command payload and
+ * the value types of its parameter definitions. Filled when the permission tree arrives
+ * and cleared when it is refreshed, so building a frame is a lookup plus a fill.
+ */
+public class PayloadTemplateCache {
+    private static final int MAX_ENTRIES = 256;
+
+    private final LinkedHashMap<String, PayloadTemplate> templates =
+            new LinkedHashMap<String, PayloadTemplate>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PayloadTemplate> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * Return the compiled template, compiling and caching it on a miss.
+     * @throws IllegalArgumentException if the payload can't be compiled
+     */
+    public PayloadTemplate get(String payload, Map<String, Parameter> parameterDefinitions) {
+        String key = keyOf(payload, parameterDefinitions);
+        synchronized (this) {
+            PayloadTemplate template = templates.get(key);
+            if (template != null) {
+                hits++;
+                return template;
+            }
+            misses++;
+        }
+        PayloadTemplate template = PayloadTemplate.compile(payload, parameterDefinitions);
+        synchronized (this) {
+            templates.put(key, template);
+        }
+        return template;
+    }
+
+    /**
+     * Compile and store a template ahead of use.
+     * @throws IllegalArgumentException if the payload can't be compiled
+     */
+    public void warm(String payload, Map<String, Parameter> parameterDefinitions) {
+        PayloadTemplate template = PayloadTemplate.compile(payload, parameterDefinitions);
+        synchronized (this) {
+            templates.put(keyOf(payload, parameterDefinitions), template);
+        }
+    }
+
+    public synchronized void clear() {
+        templates.clear();
+    }
+
+    public synchronized int size() {
+        return templates.size();
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Payload plus "key=type:value" for every definition, in key order. The type decides
+     * checksum slots and encoding; for checksum definitions the value names the algorithm.
+     */
+    private static String keyOf(String payload, Map<String, Parameter> parameterDefinitions) {
+        if (payload == null) {
+            throw new IllegalArgumentException("Payload cannot be null");
+        }
+        if (parameterDefinitions == null) {
+            parameterDefinitions = Collections.emptyMap();
+        }
+        List<String> keys = new ArrayList<>(parameterDefinitions.keySet());
+        Collections.sort(keys);
+        StringBuilder sb = new StringBuilder(payload.length() + keys.size() * 16);
+        sb.append(payload).append('\u0000');
+        for (String key : keys) {
+            Parameter param = parameterDefinitions.get(key);
+            sb.append(key).append('=');
+            if (param != null) {
+                sb.append(param.getType()).append(':').append(param.getValue());
+            }
+            sb.append(';');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.integraa_android_junaid.domain.model;
+
+/**
+ * Encodes a parameter value (as typed by the user) into payload bytes.
+ * Resolved once per parameter value type when a {@link PayloadTemplate} is compiled.
+ */
+public interface ValueEncoder {
+    /**
+     * Number of bytes {@link #write} produces for the value.
+     * @throws IllegalArgumentException if the value is malformed
+     */
+    int encodedLength(String value);
+
+    /**
+     * Write the encoded value at {@code position}.
+     * @return Position after the last byte written
+     * @throws IllegalArgumentException if the value is malformed
+     */
+    int write(String value, byte[] out, int position);
+}
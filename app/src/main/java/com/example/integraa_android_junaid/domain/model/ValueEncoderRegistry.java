@@ -0,0 +1,269 @@
+package com.example.integraa_android_junaid.domain.model;
+
+import com.example.integraa_android_junaid.util.HexCodec;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps a parameter value type ({@code Parameter.value}, e.g. "ip" or "int4") to its
+ * {@link ValueEncoder}. Types are case-insensitive; unknown types are inserted as-is
+ * ("equal"), like before. New server-defined types can be added with {@link #register}.
+ *
+ * Built-in types:
+ * equal (hex as typed), ip (4 bytes), int1, int2, int4 (big-endian), int2le, int4le
+ * (little-endian), bcd (packed, 2 digits per byte), float32, float32le (IEEE 754) and
+ * ascii (1 byte per character).
+ */
+public class ValueEncoderRegistry {
+    public static final String TYPE_EQUAL = "equal";
+
+    private final Map<String, ValueEncoder> encoders = new ConcurrentHashMap<>();
+
+    public static ValueEncoderRegistry getDefault() {
+        return Default.INSTANCE;
+    }
+
+    private static ValueEncoderRegistry createDefault() {
+        ValueEncoderRegistry registry = new ValueEncoderRegistry();
+        registry.register(TYPE_EQUAL, EQUAL);
+        registry.register("ip", IP);
+        registry.register("int1", new IntEncoder(1, false));
+        registry.register("int2", new IntEncoder(2, false));
+        registry.register("int4", new IntEncoder(4, false));
+        registry.register("int2le", new IntEncoder(2, true));
+        registry.register("int4le", new IntEncoder(4, true));
+        registry.register("bcd", BCD);
+        registry.register("float32", new Float32Encoder(false));
+        registry.register("float32le", new Float32Encoder(true));
+        registry.register("ascii", ASCII);
+        return registry;
+    }
+
+    public void register(String type, ValueEncoder encoder) {
+        encoders.put(type.toLowerCase(Locale.ROOT), encoder);
+    }
+
+    /**
+     * @return The encoder for the type, or the "equal" encoder for null and unknown types
+     */
+    public ValueEncoder resolve(String type) {
+        if (type == null) {
+            return EQUAL;
+        }
+        ValueEncoder encoder = encoders.get(type.toLowerCase(Locale.ROOT));
+        return encoder != null ? encoder : EQUAL;
+    }
+
+    public boolean isEqual(ValueEncoder encoder) {
+        return encoder == EQUAL;
+    }
+
+    /**
+     * The value already is hex and goes into the payload unchanged.
+     */
+    private static final ValueEncoder EQUAL = new ValueEncoder() {
+        @Override
+        public int encodedLength(String value) {
+            int digits = 0;
+            for (int i = 0; i < value.length(); i++) {
+                if (!Character.isWhitespace(value.charAt(i))) {
+                    digits++;
+                }
+            }
+            if ((digits & 1) != 0) {
+                throw new IllegalArgumentException("Hex value must have an even number of digits");
+            }
+            return digits / 2;
+        }
+
+        @Override
+        public int write(String value, byte[] out, int position) {
+            return position + HexCodec.decode(value, out, position);
+        }
+    };
+
+    /**
+     * IP address to 4 bytes, e.g. 192.168.1.1 -> C0 A8 01 01
+     */
+    private static final ValueEncoder IP = new ValueEncoder() {
+        @Override
+        public int encodedLength(String value) {
+            return 4;
+        }
+
+        @Override
+        public int write(String ip, byte[] out, int position) {
+            int octets = 0;
+            int current = -1;
+            for (int i = 0; i <= ip.length(); i++) {
+                char c = i < ip.length() ? ip.charAt(i) : '.';
+                if (c == '.') {
+                    if (current < 0 || octets == 4) {
+                        throw new IllegalArgumentException("Invalid IP address: " + ip);
+                    }
+                    out[position + octets++] = (byte) current;
+                    current = -1;
+                } else if (c >= '0' && c <= '9') {
+                    current = (current < 0 ? 0 : current * 10) + (c - '0');
+                    if (current > 255) {
+                        throw new IllegalArgumentException("Invalid IP address: " + ip);
+                    }
+                } else if (!Character.isWhitespace(c)) {
+                    throw new IllegalArgumentException("Invalid IP address: " + ip);
+                }
+            }
+            if (octets != 4) {
+                throw new IllegalArgumentException("Invalid IP address: " + ip);
+            }
+            return position + 4;
+        }
+    };
+
+    /**
+     * Decimal digits as packed BCD, two digits per byte, left-padded with a zero digit
+     * (e.g. 12345 -> 01 23 45).
+     */
+    private static final ValueEncoder BCD = new ValueEncoder() {
+        @Override
+        public int encodedLength(String value) {
+            return (digitCount(value) + 1) / 2;
+        }
+
+        @Override
+        public int write(String value, byte[] out, int position) {
+            int digits = digitCount(value);
+            // An odd count starts with the implicit leading zero in the high nibble
+            boolean high = (digits & 1) == 0;
+            int current = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                if (high) {
+                    current = (c - '0') << 4;
+                } else {
+                    out[position++] = (byte) (current | (c - '0'));
+                    current = 0;
+                }
+                high = !high;
+            }
+            return position;
+        }
+
+        private int digitCount(String value) {
+            int digits = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    digits++;
+                } else if (!Character.isWhitespace(c)) {
+                    throw new IllegalArgumentException("Invalid BCD value: " + value);
+                }
+            }
+            if (digits == 0) {
+                throw new IllegalArgumentException("Invalid BCD value: " + value);
+            }
+            return digits;
+        }
+    };
+
+    /**
+     * One byte per character; only 7-bit ASCII is accepted.
+     */
+    private static final ValueEncoder ASCII = new ValueEncoder() {
+        @Override
+        public int encodedLength(String value) {
+            return value.length();
+        }
+
+        @Override
+        public int write(String value, byte[] out, int position) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c > 0x7F) {
+                    throw new IllegalArgumentException("Non-ASCII character in value: " + c);
+                }
+                out[position++] = (byte) c;
+            }
+            return position;
+        }
+    };
+
+    /**
+     * Signed or unsigned integer in a fixed number of bytes. Values outside what the
+     * width can hold (either signed or unsigned) are rejected.
+     */
+    private static final class IntEncoder implements ValueEncoder {
+        private final int width;
+        private final boolean littleEndian;
+        private final long min;
+        private final long max;
+
+        IntEncoder(int width, boolean littleEndian) {
+            this.width = width;
+            this.littleEndian = littleEndian;
+            this.min = -(1L << (width * 8 - 1));
+            this.max = (1L << (width * 8)) - 1;
+        }
+
+        @Override
+        public int encodedLength(String value) {
+            return width;
+        }
+
+        @Override
+        public int write(String input, byte[] out, int position) {
+            long value;
+            try {
+                value = Long.parseLong(input.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid integer: " + input, e);
+            }
+            if (value < min || value > max) {
+                throw new IllegalArgumentException("Integer out of range for " + width + " byte(s): " + input);
+            }
+            for (int i = 0; i < width; i++) {
+                int shift = littleEndian ? i * 8 : (width - 1 - i) * 8;
+                out[position + i] = (byte) (value >>> shift);
+            }
+            return position + width;
+        }
+    }
+
+    private static final class Float32Encoder implements ValueEncoder {
+        private final boolean littleEndian;
+
+        Float32Encoder(boolean littleEndian) {
+            this.littleEndian = littleEndian;
+        }
+
+        @Override
+        public int encodedLength(String value) {
+            return 4;
+        }
+
+        @Override
+        public int write(String input, byte[] out, int position) {
+            float value;
+            try {
+                value = Float.parseFloat(input.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number: " + input, e);
+            }
+            int bits = Float.floatToIntBits(value);
+            for (int i = 0; i < 4; i++) {
+                int shift = littleEndian ? i * 8 : (3 - i) * 8;
+                out[position + i] = (byte) (bits >>> shift);
+            }
+            return position + 4;
+        }
+    }
+
+    // Holder class, so the built-in encoders above exist before the default registry is filled
+    private static final class Default {
+        static final ValueEncoderRegistry INSTANCE = createDefault();
+    }
+}
@@ -1,5 +1,8 @@
 package com.example.integraa_android_junaid.domain.usecase;
 
+import com.example.integraa_android_junaid.domain.model.ChecksumEngine;
+import com.example.integraa_android_junaid.util.HexCodec;
+
 public class CalculateChecksumUseCase {
 
     /**
@@ -13,24 +16,46 @@ public class CalculateChecksumUseCase {
             return "00";
         }
 
-        // Remove any whitespace
-        hexString = hexString.replaceAll("\\s", "");
-
-        // Convert hex string to bytes and sum
+        // Sum the bytes digit pair by digit pair, skipping whitespace
+        // (a trailing unpaired digit is ignored)
         int sum = 0;
-        for (int i = 0; i < hexString.length(); i += 2) {
-            if (i + 1 < hexString.length()) {
-                String hexByte = hexString.substring(i, i + 2);
-                int byteValue = Integer.parseInt(hexByte, 16);
-                sum += byteValue;
+        int high = -1;
+        for (int i = 0; i < hexString.length(); i++) {
+            char c = hexString.charAt(i);
+            int digit = HexCodec.digit(c);
+            if (digit < 0) {
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                throw new IllegalArgumentException("Invalid hex character: " + c);
+            }
+            if (high < 0) {
+                high = digit;
+            } else {
+                sum += (high << 4) | digit;
+                high = -1;
             }
         }
 
-        // Modulo 256
-        int checksum = sum % 256;
+        // Modulo 256, as a 2-character hex string (uppercase)
+        return HexCodec.byteToHex(sum % 256);
+    }
 
-        // Return as 2-character hex string (uppercase)
-        return String.format("%02X", checksum);
+    /**
+     * Calculate CheckSum8 Modulo 256 over a range of raw bytes
+     * @return Checksum as an unsigned value 0-255
+     */
+    public int calculate(byte[] bytes, int offset, int length) {
+        return ChecksumEngine.SUM8.compute(bytes, offset, length);
     }
-}
 
+    /**
+     * Check a frame whose last byte is the CheckSum8 of all bytes before it
+     * @param frame Buffer holding the frame
+     * @param length Number of valid bytes in the buffer
+     * @return true if the frame is at least two bytes long and the checksum matches
+     */
+    public boolean verify(byte[] frame, int length) {
+        return ChecksumEngine.SUM8.verify(frame, length);
+    }
+}
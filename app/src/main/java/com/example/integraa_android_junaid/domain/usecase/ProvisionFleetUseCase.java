@@ -0,0 +1,337 @@
+package com.example.integraa_android_junaid.domain.usecase;
+
+import com.example.integraa_android_junaid.data.bluetooth.BluetoothManager;
+import com.example.integraa_android_junaid.data.bluetooth.ReconnectPolicy;
+import com.example.integraa_android_junaid.data.bluetooth.WriteMode;
+import com.example.integraa_android_junaid.domain.model.CommandScript;
+import com.example.integraa_android_junaid.domain.model.CommandScriptResult;
+import com.example.integraa_android_junaid.domain.model.FleetReport;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs one command script on many meters. A few meters are provisioned at a time, each
+ * over its own pooled link, nearest (strongest latest scan RSSI) first. A meter whose
+ * connection or script fails is retried with backoff before it counts as failed.
+ * The selected meter's session keeps its link: the fleet shares it while provisioning
+ * that meter and hands it back afterwards instead of closing it.
+ */
+public class ProvisionFleetUseCase {
+    // Parallel meter sessions. The pool holds 4 links and throughput drops well before the
+    // controller's link limit, as the links share one radio
+    private static final int MAX_CONCURRENT_METERS = 3;
+    private static final int MAX_ATTEMPTS_PER_METER = 3;
+    // Upper bound for connecting and running the script on one meter, in case the link is
+    // closed underneath the job (e.g. evicted from the pool) without a failure callback
+    private static final long ATTEMPT_TIMEOUT_MS = 60000;
+
+    private final BluetoothManager bluetoothManager;
+    private final SendCommandUseCase sendCommandUseCase;
+    private final ReconnectPolicy retryPolicy =
+            new ReconnectPolicy(MAX_ATTEMPTS_PER_METER, 2000, 20000, MAX_ATTEMPTS_PER_METER);
+
+    public ProvisionFleetUseCase(BluetoothManager bluetoothManager, SendCommandUseCase sendCommandUseCase) {
+        this.bluetoothManager = bluetoothManager;
+        this.sendCommandUseCase = sendCommandUseCase;
+    }
+
+    /**
+     * Start provisioning. Callbacks arrive on Bluetooth and timer threads, not the main thread.
+     * @param addresses MAC addresses of the meters; duplicates are ignored
+     * @return The running job, which can be cancelled
+     */
+    public FleetJob execute(List<String> addresses, CommandScript script, FleetCallback callback) {
+        Set<String> unique = new LinkedHashSet<>();
+        for (String address : addresses) {
+            if (address != null && !address.isEmpty()) {
+                unique.add(address);
+            }
+        }
+        FleetJob job = new FleetJob(unique, script, callback);
+        if (unique.isEmpty()) {
+            callback.onError("No meters selected.");
+            return job;
+        }
+        job.start();
+        return job;
+    }
+
+    public class FleetJob {
+        private final CommandScript script;
+        private final FleetCallback callback;
+        private final int total;
+        private final PriorityQueue<MeterTask> queue;
+        private final Set<MeterTask> running = new HashSet<>();
+        private final Map<String, String> failures = new LinkedHashMap<>();
+        private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        private final List<ScheduledFuture<?>> retries = new ArrayList<>();
+        private long startedAt;
+        private int succeeded = 0;
+        private int waitingForRetry = 0;
+        private boolean cancelled = false;
+        private boolean completed = false;
+
+        FleetJob(Set<String> addresses, CommandScript script, FleetCallback callback) {
+            this.script = script;
+            this.callback = callback;
+            this.total = addresses.size();
+            // Strongest signal first; ties (and meters not seen in a scan) keep list order
+            this.queue = new PriorityQueue<>(Math.max(1, total), (a, b) -> {
+                int byRssi = Integer.compare(b.rssi, a.rssi);
+                return byRssi != 0 ? byRssi : Integer.compare(a.order, b.order);
+            });
+            int order = 0;
+            for (String address : addresses) {
+                MeterTask task = new MeterTask(address, order++);
+                task.rssi = rssiOf(address);
+                queue.add(task);
+            }
+        }
+
+        void start() {
+            synchronized (this) {
+                startedAt = System.nanoTime();
+            }
+            pump();
+        }
+
+        /**
+         * Stop starting meters and close the links of the ones in progress. Meters that
+         * didn't finish are reported as failed.
+         */
+        public void cancel() {
+            List<MeterTask> active;
+            synchronized (this) {
+                if (cancelled || completed) {
+                    return;
+                }
+                cancelled = true;
+                for (ScheduledFuture<?> retry : retries) {
+                    retry.cancel(false);
+                }
+                retries.clear();
+                waitingForRetry = 0;
+                while (!queue.isEmpty()) {
+                    failures.put(queue.poll().address, "Cancelled");
+                }
+                active = new ArrayList<>(running);
+            }
+            for (MeterTask task : active) {
+                finishAttempt(task, task.attempt, false, "Cancelled");
+            }
+            finishIfDone();
+        }
+
+        public synchronized FleetReport getReport() {
+            long elapsedMs = startedAt == 0 ? 0 : (System.nanoTime() - startedAt) / 1_000_000;
+            return new FleetReport(total, succeeded, running.size(), new LinkedHashMap<>(failures), elapsedMs);
+        }
+
+        private void pump() {
+            List<MeterTask> toStart = new ArrayList<>();
+            synchronized (this) {
+                while (!cancelled && running.size() < MAX_CONCURRENT_METERS && !queue.isEmpty()) {
+                    MeterTask task = queue.poll();
+                    task.attempt++;
+                    task.attemptDone = false;
+                    task.scriptStarted = false;
+                    running.add(task);
+                    toStart.add(task);
+                }
+            }
+            for (MeterTask task : toStart) {
+                startAttempt(task, task.attempt);
+            }
+        }
+
+        private void startAttempt(MeterTask task, int attempt) {
+            callback.onMeterStarted(task.address, attempt);
+            synchronized (this) {
+                if (!timer.isShutdown()) {
+                    task.watchdog = timer.schedule(() -> finishAttempt(task, attempt, false,
+                            "Device did not respond. Please check the device and try again."),
+                            ATTEMPT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                }
+            }
+            BluetoothManager.BluetoothGattCallback link = new BluetoothManager.BluetoothGattCallback() {
+                @Override
+                public void onConnected() {
+                }
+
+                @Override
+                public void onServicesDiscovered() {
+                    synchronized (FleetJob.this) {
+                        // Ignore a link that only came up after the attempt timed out or was cancelled
+                        if (task.attempt != attempt || task.attemptDone || task.scriptStarted) {
+                            return;
+                        }
+                        task.scriptStarted = true;
+                    }
+                    runScript(task, attempt);
+                }
+
+                @Override
+                public void onDisconnected() {
+                    // The pool has closed the link; the attempt is retried on a fresh one
+                    finishAttempt(task, attempt, false, "Device disconnected");
+                }
+
+                @Override
+                public void onConnectionFailed(String error) {
+                    finishAttempt(task, attempt, false, "Failed to connect to device: " + error);
+                }
+            };
+            synchronized (this) {
+                task.link = link;
+            }
+            bluetoothManager.acquireConnection(task.address, link);
+        }
+
+        private void runScript(MeterTask task, int attempt) {
+            sendCommandUseCase.executeScript(script, task.address,
+                    (frame, done) -> bluetoothManager.sendRequest(task.address, frame, WriteMode.PIPELINED, done),
+                    new SendCommandUseCase.ScriptCallback() {
+                        @Override
+                        public void onStepComplete(int index, CommandScriptResult.StepResult result) {
+                        }
+
+                        @Override
+                        public void onComplete(CommandScriptResult result) {
+                            finishAttempt(task, attempt, result.isSuccess(), firstError(result));
+                        }
+
+                        @Override
+                        public void onError(String error) {
+                            // The script itself is malformed; no meter would fare better
+                            finishAttempt(task, attempt, false, error);
+                            cancel();
+                        }
+                    });
+        }
+
+        private void finishAttempt(MeterTask task, int attempt, boolean success, String error) {
+            boolean retry;
+            long delayMs = 0;
+            BluetoothManager.BluetoothGattCallback link;
+            synchronized (this) {
+                if (task.attempt != attempt || task.attemptDone) {
+                    return;
+                }
+                task.attemptDone = true;
+                link = task.link;
+                task.link = null;
+                running.remove(task);
+                if (task.watchdog != null) {
+                    task.watchdog.cancel(false);
+                    task.watchdog = null;
+                }
+                retry = !success && !cancelled && attempt < retryPolicy.getMaxAttempts();
+                if (success) {
+                    succeeded++;
+                } else if (retry) {
+                    waitingForRetry++;
+                    delayMs = retryPolicy.nextDelayMs(attempt);
+                } else {
+                    failures.put(task.address, error != null ? error : "Provisioning failed");
+                }
+            }
+            // Frees the pool slot for the next meter and fails requests still in flight, unless
+            // the session is using the link too; then it stays up for the session
+            if (link != null) {
+                bluetoothManager.releaseConnection(task.address, link);
+            }
+            callback.onMeterFinished(task.address, success, error, getReport());
+            if (retry) {
+                scheduleRetry(task, delayMs);
+            }
+            pump();
+            finishIfDone();
+        }
+
+        private synchronized void scheduleRetry(MeterTask task, long delayMs) {
+            if (cancelled) {
+                return;
+            }
+            ScheduledFuture<?>[] holder = new ScheduledFuture<?>[1];
+            holder[0] = timer.schedule(() -> {
+                synchronized (FleetJob.this) {
+                    retries.remove(holder[0]);
+                    if (cancelled) {
+                        return;
+                    }
+                    waitingForRetry--;
+                    task.rssi = rssiOf(task.address);
+                    queue.add(task);
+                }
+                pump();
+            }, delayMs, TimeUnit.MILLISECONDS);
+            retries.add(holder[0]);
+        }
+
+        private void finishIfDone() {
+            synchronized (this) {
+                if (completed || !running.isEmpty() || !queue.isEmpty() || waitingForRetry > 0) {
+                    return;
+                }
+                completed = true;
+            }
+            timer.shutdown();
+            callback.onComplete(getReport());
+        }
+    }
+
+    private int rssiOf(String address) {
+        Integer rssi = bluetoothManager.getLastRssi(address);
+        return rssi != null ? rssi : Integer.MIN_VALUE;
+    }
+
+    private static String firstError(CommandScriptResult result) {
+        for (CommandScriptResult.StepResult step : result.getSteps()) {
+            if (!step.isSuccess()) {
+                return step.getLabel() + ": " + step.getErrorMessage();
+            }
+        }
+        return null;
+    }
+
+    private static class MeterTask {
+        final String address;
+        final int order;
+        int rssi;
+        int attempt = 0;
+        boolean attemptDone = false;
+        boolean scriptStarted = false;
+        ScheduledFuture<?> watchdog;
+        // This attempt's listener on the meter's link
+        BluetoothManager.BluetoothGattCallback link;
+
+        MeterTask(String address, int order) {
+            this.address = address;
+            this.order = order;
+        }
+    }
+
+    public interface FleetCallback {
+        void onMeterStarted(String address, int attempt);
+        /**
+         * One attempt on a meter ended; failed meters are retried until the report lists them as failed
+         */
+        void onMeterFinished(String address, boolean success, String error, FleetReport report);
+        void onComplete(FleetReport report);
+        /**
+         * The job could not be started
+         */
+        void onError(String error);
+    }
+}
@@ -1,40 +1,245 @@
 package com.example.integraa_android_junaid.domain.usecase;
 
 import com.example.integraa_android_junaid.data.bluetooth.BluetoothManager;
+import com.example.integraa_android_junaid.data.bluetooth.BluetoothSessionManager;
+import com.example.integraa_android_junaid.data.bluetooth.LinkProfile;
+import com.example.integraa_android_junaid.data.bluetooth.WriteMode;
+import com.example.integraa_android_junaid.data.local.AuditLog;
+import com.example.integraa_android_junaid.data.local.CommandOutbox;
+import com.example.integraa_android_junaid.domain.model.CommandScript;
+import com.example.integraa_android_junaid.domain.model.CommandScriptResult;
+import com.example.integraa_android_junaid.domain.model.Parameter;
 import com.example.integraa_android_junaid.domain.model.PayloadBuilder;
+import com.example.integraa_android_junaid.util.HexCodec;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 public class SendCommandUseCase {
+    // Script requests in flight at once; replies come back in order, so a small window
+    // keeps the link busy without queued requests running into the reply timeout
+    private static final int SCRIPT_PIPELINE_DEPTH = 4;
+
     private final BluetoothManager bluetoothManager;
+    private final BluetoothSessionManager sessionManager;
     private final PayloadBuilder payloadBuilder;
+    private final CommandOutbox outbox;
+    private final AuditLog auditLog;
 
-    public SendCommandUseCase(BluetoothManager bluetoothManager, PayloadBuilder payloadBuilder) {
+    public SendCommandUseCase(BluetoothManager bluetoothManager, BluetoothSessionManager sessionManager, PayloadBuilder payloadBuilder,
+                              CommandOutbox outbox, AuditLog auditLog) {
         this.bluetoothManager = bluetoothManager;
+        this.sessionManager = sessionManager;
         this.payloadBuilder = payloadBuilder;
+        this.outbox = outbox;
+        this.auditLog = auditLog;
     }
 
     public void execute(String payload, Map<String, String> parameterValues, SendCommandCallback callback) {
+        execute(payload, parameterValues, null, callback);
+    }
+
+    /**
+     * Build the final payload and send it over the active session.
+     * If the session link is still coming up, the request goes out as soon as it is ready.
+     * The callback fires once the device replied, with the reply (hex, checksum verified)
+     * and the round-trip latency. Meters that can't notify only acknowledge the write,
+     * in which case the reply is null.
+     * The frame is kept in the outbox until the device confirmed it, so a send cut short
+     * by a dropped link or the app being closed is completed in the background. A frame
+     * that was written but got no reply is not resent, since the meter may have acted on it.
+     * Every attempt is recorded in the {@link AuditLog}.
+     */
+    public void execute(String payload, Map<String, String> parameterValues, Map<String, Parameter> parameterDefinitions, SendCommandCallback callback) {
+        byte[] frame;
         try {
-            String finalPayload = payloadBuilder.buildPayload(payload, parameterValues);
-            BluetoothManager.SendResult result = bluetoothManager.sendHexPayload(finalPayload);
+            frame = payloadBuilder.buildFrame(payload, parameterValues, parameterDefinitions);
+        } catch (IllegalArgumentException e) {
+            callback.onError("Invalid command format. Please try again or contact support.");
+            return;
+        } catch (Exception e) {
+            callback.onError("Error building payload: " + e.getMessage());
+            return;
+        }
+
+        String address = sessionManager.getSessionAddress();
+        long outboxId = address != null ? outbox.enqueue(address, frame) : -1;
+        sessionManager.request(frame, result -> {
+            auditLog.record(address, frame, result.isSuccess(), result.getResponse(),
+                    result.getLatencyMs(), result.getErrorMessage());
             if (result.isSuccess()) {
-                callback.onSuccess(finalPayload);
+                if (outboxId >= 0) {
+                    outbox.markDone(outboxId);
+                }
+                callback.onSuccess(HexCodec.encode(frame), HexCodec.encode(result.getResponse()), result.getLatencyMs());
             } else {
                 String errorMsg = result.getErrorMessage();
                 if (errorMsg == null || errorMsg.isEmpty()) {
                     errorMsg = "Failed to send payload to Bluetooth device";
                 }
+                if (outboxId >= 0 && result.getFailure() == BluetoothManager.SendResult.Failure.NO_REPLY) {
+                    outbox.markDone(outboxId);
+                } else if (outboxId >= 0) {
+                    outbox.keepForRetry(outboxId);
+                    if (!errorMsg.endsWith(".")) {
+                        errorMsg += ".";
+                    }
+                    errorMsg += " The command will be sent automatically once the device is in range.";
+                }
                 callback.onError(errorMsg);
             }
-        } catch (Exception e) {
-            callback.onError("Error building payload: " + e.getMessage());
+        });
+    }
+
+    /**
+     * Send a whole script over the session link. All frames are built first, so a
+     * malformed step fails the script before anything is sent. The frames then go out
+     * pipelined, a few requests in flight at a time, and a failed step doesn't stop the
+     * ones after it. The link runs the {@link LinkProfile#BULK} profile while the script
+     * does and goes back to {@link LinkProfile#INTERACTIVE} when it ends.
+     */
+    public void executeScript(CommandScript script, ScriptCallback callback) {
+        executeScript(script, sessionManager.getSessionAddress(),
+                (frame, done) -> sessionManager.request(frame, WriteMode.PIPELINED, done), callback);
+    }
+
+    /**
+     * Like {@link #executeScript(CommandScript, ScriptCallback)}, but over a caller-chosen link,
+     * e.g. a pooled connection to one meter of a fleet.
+     * @param address The meter the sender talks to, for the audit log
+     */
+    public void executeScript(CommandScript script, String address, FrameSender sender, ScriptCallback callback) {
+        List<CommandScript.Step> steps = script.getSteps();
+        if (steps.isEmpty()) {
+            callback.onError("The script has no commands.");
+            return;
+        }
+        byte[][] frames = new byte[steps.size()][];
+        for (int i = 0; i < frames.length; i++) {
+            CommandScript.Step step = steps.get(i);
+            try {
+                frames[i] = payloadBuilder.buildFrame(step.getCommand().getPayload(),
+                        step.getParameterValues(), step.getCommand().getParameters());
+            } catch (IllegalArgumentException e) {
+                callback.onError("Invalid command format in step " + (i + 1) + " (" + labelOf(step) + "). Please check the values and try again.");
+                return;
+            } catch (Exception e) {
+                callback.onError("Error building payload for step " + (i + 1) + ": " + e.getMessage());
+                return;
+            }
+        }
+        if (address != null) {
+            bluetoothManager.setLinkProfile(address, LinkProfile.BULK);
         }
+        new ScriptRun(steps, frames, address, auditing(address, sender), callback).start();
+    }
+
+    private FrameSender auditing(String address, FrameSender sender) {
+        return (frame, done) -> sender.send(frame, result -> {
+            auditLog.record(address, frame, result.isSuccess(), result.getResponse(),
+                    result.getLatencyMs(), result.getErrorMessage());
+            done.onComplete(result);
+        });
+    }
+
+    private static String labelOf(CommandScript.Step step) {
+        String label = step.getCommand().getLabel();
+        return label != null ? label : step.getCommand().getKey();
+    }
+
+    /**
+     * Keeps up to {@link #SCRIPT_PIPELINE_DEPTH} steps in flight and collects their results.
+     */
+    private class ScriptRun {
+        private final List<CommandScript.Step> steps;
+        private final byte[][] frames;
+        private final String address;
+        private final FrameSender sender;
+        private final ScriptCallback callback;
+        private final CommandScriptResult.StepResult[] results;
+        private long startedAt;
+        private int nextStep = 0;
+        private int completed = 0;
+
+        ScriptRun(List<CommandScript.Step> steps, byte[][] frames, String address, FrameSender sender, ScriptCallback callback) {
+            this.steps = steps;
+            this.frames = frames;
+            this.address = address;
+            this.sender = sender;
+            this.callback = callback;
+            this.results = new CommandScriptResult.StepResult[frames.length];
+        }
+
+        void start() {
+            startedAt = System.nanoTime();
+            for (int i = 0; i < SCRIPT_PIPELINE_DEPTH; i++) {
+                sendNext();
+            }
+        }
+
+        private void sendNext() {
+            int index;
+            synchronized (this) {
+                if (nextStep >= frames.length) {
+                    return;
+                }
+                index = nextStep++;
+            }
+            sender.send(frames[index], result -> onStepComplete(index, result));
+        }
+
+        private void onStepComplete(int index, BluetoothManager.SendResult result) {
+            String error = null;
+            if (!result.isSuccess()) {
+                error = result.getErrorMessage();
+                if (error == null || error.isEmpty()) {
+                    error = "Failed to send payload to Bluetooth device";
+                }
+            }
+            CommandScriptResult.StepResult stepResult = new CommandScriptResult.StepResult(
+                    labelOf(steps.get(index)), result.isSuccess(), HexCodec.encode(frames[index]),
+                    result.isSuccess() ? HexCodec.encode(result.getResponse()) : null, error, result.getLatencyMs());
+            boolean finished;
+            synchronized (this) {
+                results[index] = stepResult;
+                completed++;
+                finished = completed == frames.length;
+            }
+            callback.onStepComplete(index, stepResult);
+            if (finished) {
+                long totalMs = (System.nanoTime() - startedAt) / 1_000_000;
+                if (address != null) {
+                    bluetoothManager.setLinkProfile(address, LinkProfile.INTERACTIVE);
+                }
+                callback.onComplete(new CommandScriptResult(Arrays.asList(results), totalMs));
+            } else {
+                sendNext();
+            }
+        }
+    }
+
+    /**
+     * Sends one script frame as a request and reports the meter's reply.
+     */
+    public interface FrameSender {
+        void send(byte[] frame, BluetoothManager.SendCallback callback);
+    }
+
+    public interface ScriptCallback {
+        /**
+         * A step finished; steps can complete out of order if one fails early
+         */
+        void onStepComplete(int index, CommandScriptResult.StepResult result);
+        void onComplete(CommandScriptResult result);
+        /**
+         * The script could not be started; nothing was sent
+         */
+        void onError(String error);
     }
 
     public interface SendCommandCallback {
-        void onSuccess(String payload);
+        void onSuccess(String payload, String response, long latencyMs);
         void onError(String error);
     }
 }
-
@@ -0,0 +1,235 @@
+package com.example.integraa_android_junaid.service;
+
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.integraa_android_junaid.data.bluetooth.BluetoothManager;
+import com.example.integraa_android_junaid.data.bluetooth.BluetoothSessionManager;
+import com.example.integraa_android_junaid.domain.model.CommandScript;
+import com.example.integraa_android_junaid.domain.model.CommandScriptResult;
+import com.example.integraa_android_junaid.domain.model.FleetReport;
+import com.example.integraa_android_junaid.domain.usecase.ProvisionFleetUseCase;
+import com.example.integraa_android_junaid.domain.usecase.SendCommandUseCase;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs command scripts and fleet jobs independently of any screen, so closing a dialog or
+ * recreating the activity doesn't stop them. Each job keeps {@link BleSessionService} in
+ * the foreground while it runs; progress and outcomes are published as LiveData. Outcomes
+ * stay set until the screen reports them shown, so a recreated activity doesn't show them twice.
+ */
+public class BleJobRunner {
+    private static final String TAG = "BleJobRunner";
+    private static final String SCRIPT_HOLDER = "script";
+    private static final String FLEET_HOLDER = "fleet";
+
+    private final BluetoothManager bluetoothManager;
+    private final BluetoothSessionManager sessionManager;
+    private final SendCommandUseCase sendCommandUseCase;
+    private final ProvisionFleetUseCase provisionFleetUseCase;
+    private final BleServiceController serviceController;
+    private final MutableLiveData<Integer> scriptStepsDone = new MutableLiveData<>();
+    private final MutableLiveData<CommandScriptResult> scriptResult = new MutableLiveData<>();
+    private final MutableLiveData<FleetReport> fleetReport = new MutableLiveData<>();
+    private final MutableLiveData<String> jobError = new MutableLiveData<>();
+    private int scriptRuns = 0;
+    private FleetRun fleetRun;
+
+    public BleJobRunner(BluetoothManager bluetoothManager, BluetoothSessionManager sessionManager,
+                        SendCommandUseCase sendCommandUseCase, ProvisionFleetUseCase provisionFleetUseCase,
+                        BleServiceController serviceController) {
+        this.bluetoothManager = bluetoothManager;
+        this.sessionManager = sessionManager;
+        this.sendCommandUseCase = sendCommandUseCase;
+        this.provisionFleetUseCase = provisionFleetUseCase;
+        this.serviceController = serviceController;
+    }
+
+    /**
+     * Run the script on one meter over the session link. Steps done so far are published
+     * through {@link #getScriptStepsDone()}, the outcome through {@link #getScriptResult()}.
+     */
+    public void runScript(String address, CommandScript script) {
+        if (address == null || address.isEmpty()) {
+            jobError.postValue("No Bluetooth device selected. Please select a device from settings first.");
+            return;
+        }
+        // A name per run, so one script ending doesn't drop the service under another
+        String holder;
+        synchronized (this) {
+            holder = SCRIPT_HOLDER + "-" + (++scriptRuns);
+        }
+        AtomicBoolean released = new AtomicBoolean(false);
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                serviceController.release(holder);
+            }
+        };
+        serviceController.acquire(holder);
+        scriptStepsDone.postValue(0);
+        bluetoothManager.getGattExecutor().execute(() -> {
+            sessionManager.startSession(address);
+            sendCommandUseCase.executeScript(script, new SendCommandUseCase.ScriptCallback() {
+                private int done = 0;
+
+                @Override
+                public void onStepComplete(int index, CommandScriptResult.StepResult result) {
+                    scriptStepsDone.postValue(++done);
+                }
+
+                @Override
+                public void onComplete(CommandScriptResult result) {
+                    release.run();
+                    scriptResult.postValue(result);
+                }
+
+                @Override
+                public void onError(String error) {
+                    release.run();
+                    jobError.postValue(error);
+                }
+            });
+        });
+    }
+
+    /**
+     * Run the script on every listed meter, replacing a fleet job that is still running.
+     * Progress, including meters/minute, is published through {@link #getFleetReport()}
+     * after each meter.
+     */
+    public synchronized void provisionFleet(List<String> addresses, CommandScript script) {
+        cancelFleet();
+        FleetRun run = new FleetRun();
+        fleetRun = run;
+        serviceController.acquire(FLEET_HOLDER);
+        run.job = provisionFleetUseCase.execute(addresses, script, new ProvisionFleetUseCase.FleetCallback() {
+            @Override
+            public void onMeterStarted(String address, int attempt) {
+                Log.d(TAG, "Provisioning " + address + " (attempt " + attempt + ")");
+            }
+
+            @Override
+            public void onMeterFinished(String address, boolean success, String error, FleetReport report) {
+                if (!success) {
+                    Log.w(TAG, "Provisioning " + address + " failed: " + error);
+                }
+                run.publish(report);
+            }
+
+            @Override
+            public void onComplete(FleetReport report) {
+                Log.d(TAG, "Fleet done: " + report.getSucceeded() + "/" + report.getTotal()
+                        + " meters, " + String.format(Locale.US, "%.1f", report.getMetersPerMinute()) + " meters/min");
+                run.release();
+                run.publish(report);
+            }
+
+            @Override
+            public void onError(String error) {
+                run.release();
+                if (run.isCurrent()) {
+                    jobError.postValue(error);
+                }
+            }
+        });
+        run.publish(run.job.getReport());
+    }
+
+    /**
+     * Stop the running fleet job; meters that didn't finish are reported as failed.
+     */
+    public void cancelFleet() {
+        FleetRun run;
+        synchronized (this) {
+            run = fleetRun;
+        }
+        if (run != null && run.job != null) {
+            // Completes the job, which publishes the final report and releases the service
+            run.job.cancel();
+        }
+        if (run != null) {
+            run.release();
+        }
+    }
+
+    public synchronized boolean isFleetRunning() {
+        return fleetRun != null && !fleetRun.released.get();
+    }
+
+    /**
+     * Steps of the latest script that have completed so far
+     */
+    public LiveData<Integer> getScriptStepsDone() {
+        return scriptStepsDone;
+    }
+
+    public LiveData<CommandScriptResult> getScriptResult() {
+        return scriptResult;
+    }
+
+    public LiveData<FleetReport> getFleetReport() {
+        return fleetReport;
+    }
+
+    /**
+     * A script or fleet job that could not be started
+     */
+    public LiveData<String> getJobError() {
+        return jobError;
+    }
+
+    /**
+     * The screen showed the script outcome. Call on the main thread, like the methods below.
+     */
+    public void onScriptResultShown() {
+        scriptResult.setValue(null);
+    }
+
+    /**
+     * The screen showed the fleet report; a finished one is cleared, progress of a running
+     * job stays so a recreated screen picks it up again.
+     */
+    public void onFleetReportShown() {
+        FleetReport report = fleetReport.getValue();
+        if (report != null && report.isFinished()) {
+            fleetReport.setValue(null);
+        }
+    }
+
+    public void onJobErrorShown() {
+        jobError.setValue(null);
+    }
+
+    /**
+     * One fleet job and its hold on the service. Cancelling and the job's own completion
+     * can both end it; the hold is released only once, and reports of a job that was
+     * replaced are dropped.
+     */
+    private class FleetRun {
+        final AtomicBoolean released = new AtomicBoolean(false);
+        ProvisionFleetUseCase.FleetJob job;
+
+        void release() {
+            if (released.compareAndSet(false, true) && !isFleetRunning()) {
+                serviceController.release(FLEET_HOLDER);
+            }
+        }
+
+        boolean isCurrent() {
+            synchronized (BleJobRunner.this) {
+                return fleetRun == this;
+            }
+        }
+
+        void publish(FleetReport report) {
+            if (isCurrent()) {
+                fleetReport.postValue(report);
+            }
+        }
+    }
+}
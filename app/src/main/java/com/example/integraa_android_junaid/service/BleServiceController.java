@@ -0,0 +1,61 @@
+package com.example.integraa_android_junaid.service;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps {@link BleSessionService} running while any holder needs Bluetooth work to go on
+ * in the background. Each long-running job acquires under its own name and releases when
+ * it ends; the service stops once the last holder is gone.
+ */
+public class BleServiceController {
+    private static final String TAG = "BleServiceController";
+
+    private final Context context;
+    private final Set<String> holders = new HashSet<>();
+
+    public BleServiceController(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Start (or keep) the foreground service on behalf of the holder. Acquiring twice under
+     * the same name needs only one release.
+     */
+    public synchronized void acquire(String holder) {
+        holders.add(holder);
+        // Also on repeat acquires, so the service re-arms its wake lock for the new job
+        startService(new Intent(context, BleSessionService.class), holder);
+    }
+
+    /**
+     * Drop the holder's claim; the last release asks the service to stop itself. Never
+     * stopService: the service may not have reached startForeground yet, and stopping it
+     * then crashes the app.
+     */
+    public synchronized void release(String holder) {
+        if (holders.remove(holder) && holders.isEmpty()) {
+            startService(new Intent(context, BleSessionService.class).setAction(BleSessionService.ACTION_STOP), holder);
+        }
+    }
+
+    public synchronized boolean isHeld() {
+        return !holders.isEmpty();
+    }
+
+    private void startService(Intent intent, String holder) {
+        try {
+            ContextCompat.startForegroundService(context, intent);
+        } catch (IllegalStateException e) {
+            // Android 12+ refuses foreground starts from the background; the job still
+            // runs, only without the protection against being killed
+            Log.w(TAG, "Could not start session service for " + holder, e);
+        }
+    }
+}
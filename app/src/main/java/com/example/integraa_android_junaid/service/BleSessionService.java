@@ -0,0 +1,161 @@
+package com.example.integraa_android_junaid.service;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Build;
+import android.os.IBinder;
+import android.os.PowerManager;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.lifecycle.Observer;
+
+import com.example.integraa_android_junaid.R;
+import com.example.integraa_android_junaid.data.bluetooth.BluetoothManager;
+import com.example.integraa_android_junaid.data.bluetooth.ConnectionState;
+import com.example.integraa_android_junaid.ui.main.MainActivity;
+
+import javax.inject.Inject;
+
+import dagger.hilt.android.AndroidEntryPoint;
+
+/**
+ * Foreground service that keeps the process, and with it the singleton Bluetooth stack,
+ * alive while meters are being worked on, so links and running scripts survive leaving
+ * the activity or turning the screen off. Holds a partial wake lock for the same span and
+ * shows the link state in its notification.
+ *
+ * Started and stopped by {@link BleServiceController}; nothing binds to it. It goes into
+ * the foreground as soon as it is created, and stops itself on {@link #ACTION_STOP}, so a
+ * job that ends right after starting it can't stop it before it kept its foreground promise.
+ */
+@AndroidEntryPoint
+public class BleSessionService extends Service {
+    static final String ACTION_STOP = "com.example.integraa_android_junaid.action.STOP_BLE_SESSION";
+    private static final String TAG = "BleSessionService";
+    private static final String CHANNEL_ID = "ble_session";
+    private static final int NOTIFICATION_ID = 1001;
+    // Upper bound in case a release is missed; every start re-arms it
+    private static final long WAKE_LOCK_TIMEOUT_MS = 60 * 60 * 1000;
+
+    @Inject
+    BluetoothManager bluetoothManager;
+
+    private NotificationManager notificationManager;
+    private PowerManager.WakeLock wakeLock;
+    private final Observer<ConnectionState> stateObserver = this::updateNotification;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        createChannel();
+
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null) {
+            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "Integraa:BleSession");
+            wakeLock.setReferenceCounted(false);
+        }
+        enterForeground();
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Every start comes through startForegroundService, so each one is answered
+        enterForeground();
+        if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+            // Stays up if a job acquired the service again after this stop was sent
+            stopSelf(startId);
+            return START_NOT_STICKY;
+        }
+        if (wakeLock != null) {
+            wakeLock.acquire(WAKE_LOCK_TIMEOUT_MS);
+        }
+        // observeForever on an already observed LiveData is a no-op
+        bluetoothManager.getConnectionState().observeForever(stateObserver);
+        Log.d(TAG, "Session service started");
+        // Nothing to resume if the process is killed: the links are gone with it
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        bluetoothManager.getConnectionState().removeObserver(stateObserver);
+        if (wakeLock != null && wakeLock.isHeld()) {
+            wakeLock.release();
+        }
+        Log.d(TAG, "Session service stopped");
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private void enterForeground() {
+        Notification notification = buildNotification(bluetoothManager.getConnectionState().getValue());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_CONNECTED_DEVICE);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+        }
+    }
+
+    private void createChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && notificationManager != null) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                    getString(R.string.ble_session_channel_name), NotificationManager.IMPORTANCE_LOW);
+            channel.setDescription(getString(R.string.ble_session_channel_description));
+            channel.setShowBadge(false);
+            notificationManager.createNotificationChannel(channel);
+        }
+    }
+
+    private void updateNotification(ConnectionState state) {
+        if (notificationManager != null) {
+            notificationManager.notify(NOTIFICATION_ID, buildNotification(state));
+        }
+    }
+
+    private Notification buildNotification(ConnectionState state) {
+        Intent openApp = new Intent(this, MainActivity.class);
+        openApp.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0, openApp,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_sys_data_bluetooth)
+                .setContentTitle(getString(R.string.ble_session_title))
+                .setContentText(describe(state))
+                .setContentIntent(contentIntent)
+                .setCategory(NotificationCompat.CATEGORY_SERVICE)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .build();
+    }
+
+    private String describe(ConnectionState state) {
+        if (state == null || state.getAddress() == null) {
+            return getString(R.string.ble_session_idle);
+        }
+        String device = state.getDeviceName() != null ? state.getDeviceName() : state.getAddress();
+        switch (state.getPhase()) {
+            case CONNECTING:
+            case DISCOVERING:
+                return getString(R.string.ble_session_connecting, device);
+            case READY:
+                return getString(R.string.ble_session_connected, device);
+            case BUSY:
+                return getString(R.string.ble_session_busy, device);
+            default:
+                return getString(R.string.ble_session_disconnected, device);
+        }
+    }
+}
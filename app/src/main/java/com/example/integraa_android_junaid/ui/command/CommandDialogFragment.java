@@ -1,7 +1,9 @@
 package com.example.integraa_android_junaid.ui.command;
 
 import android.os.Bundle;
+import android.text.Editable;
 import android.text.InputType;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -19,7 +21,9 @@ import androidx.lifecycle.ViewModelProvider;
 import com.example.integraa_android_junaid.R;
 import com.example.integraa_android_junaid.data.api.models.Command;
 import com.example.integraa_android_junaid.data.api.models.Parameter;
-import com.example.integraa_android_junaid.util.ValidationUtils;
+import com.example.integraa_android_junaid.ui.main.MainViewModel;
+import com.example.integraa_android_junaid.util.ParameterValidator;
+import com.example.integraa_android_junaid.util.ParameterValidatorCache;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
@@ -28,6 +32,8 @@ import com.google.gson.Gson;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.inject.Inject;
+
 import dagger.hilt.android.AndroidEntryPoint;
 
 @AndroidEntryPoint
@@ -39,12 +45,19 @@ public class CommandDialogFragment extends DialogFragment {
     private Command command;
     private LinearLayout parametersContainer;
     private MaterialButton sendButton;
+    private MaterialButton addToScriptButton;
     private TextView commandLabelTextView;
     private TextView commandPayloadTextView;
     private Map<String, TextInputEditText> parameterInputs = new HashMap<>();
     private Map<String, com.example.integraa_android_junaid.domain.model.Parameter> parameterDefinitions = new HashMap<>();
+    // Validators come from the permission snapshot; results are kept up to date as the user types
+    private Map<String, ParameterValidator> parameterValidators = new HashMap<>();
+    private Map<String, ParameterValidator.Result> validationResults = new HashMap<>();
     private CommandViewModel viewModel;
 
+    @Inject
+    ParameterValidatorCache validatorCache;
+
     public static CommandDialogFragment newInstance(String commandKey, Command command) {
         CommandDialogFragment fragment = new CommandDialogFragment();
         Bundle args = new Bundle();
@@ -91,6 +104,7 @@ public class CommandDialogFragment extends DialogFragment {
             commandPayloadTextView = view.findViewById(R.id.commandPayloadTextView);
             parametersContainer = view.findViewById(R.id.parametersContainer);
             sendButton = view.findViewById(R.id.sendButton);
+            addToScriptButton = view.findViewById(R.id.addToScriptButton);
 
             if (command != null) {
                 if (commandLabelTextView != null) {
@@ -109,6 +123,9 @@ public class CommandDialogFragment extends DialogFragment {
             if (sendButton != null) {
                 sendButton.setOnClickListener(v -> sendCommand());
             }
+            if (addToScriptButton != null) {
+                addToScriptButton.setOnClickListener(v -> addToScript());
+            }
         } catch (Exception e) {
             e.printStackTrace();
             if (commandLabelTextView != null) {
@@ -179,6 +196,8 @@ public class CommandDialogFragment extends DialogFragment {
         try {
             parametersContainer.removeAllViews();
             parameterInputs.clear();
+            parameterValidators.clear();
+            validationResults.clear();
             parametersContainer.setVisibility(View.VISIBLE);
 
             for (Map.Entry<String, Parameter> entry : command.getParameters().entrySet()) {
@@ -216,6 +235,28 @@ public class CommandDialogFragment extends DialogFragment {
                         editText.setInputType(InputType.TYPE_CLASS_TEXT);
                     }
 
+                    ParameterValidator validator = validatorCache.get(param.getRequired(), param.getType(), param.getMin(), param.getMax());
+                    parameterValidators.put(paramKey, validator);
+                    validationResults.put(paramKey, validator.validate(""));
+                    editText.addTextChangedListener(new TextWatcher() {
+                        @Override
+                        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                        }
+
+                        @Override
+                        public void onTextChanged(CharSequence s, int start, int before, int count) {
+                        }
+
+                        @Override
+                        public void afterTextChanged(Editable s) {
+                            String value = s.toString().trim();
+                            ParameterValidator.Result result = validator.validate(value);
+                            validationResults.put(paramKey, result);
+                            // Don't flag a field the user has cleared; Send still rejects it
+                            showValidationError(editText, value.isEmpty() ? ParameterValidator.Result.VALID : result);
+                        }
+                    });
+
                     parameterInputs.put(paramKey, editText);
                     parametersContainer.addView(textInputLayout);
                 } catch (Exception e) {
@@ -246,8 +287,6 @@ public class CommandDialogFragment extends DialogFragment {
         Map<String, String> parameterValues = new HashMap<>();
         Map<String, com.example.integraa_android_junaid.domain.model.Parameter> parameterDefinitions = new HashMap<>();
 
-        boolean isValid = true;
-        
         if (command.getParameters() == null || command.getParameters().isEmpty()) {
             // No parameters, send command directly
             // Show loading feedback
@@ -260,31 +299,84 @@ public class CommandDialogFragment extends DialogFragment {
             viewModel.sendCommand(command.getPayload(), parameterValues, parameterDefinitions, new CommandViewModel.SendCommandCallback() {
                 @Override
                 public void onSuccess(String payload) {
+                    // The reply can come after the dialog was closed
+                    if (!isAdded()) {
+                        return;
+                    }
                     if (sendButton != null) {
                         sendButton.setEnabled(true);
                         sendButton.setText("Send Command");
                     }
-                    if (getContext() != null) {
-                        Toast.makeText(getContext(), getString(R.string.success_command_sent), Toast.LENGTH_SHORT).show();
-                    }
-                    dismiss();
+                    Toast.makeText(requireContext(), getString(R.string.success_command_sent), Toast.LENGTH_SHORT).show();
+                    dismissAllowingStateLoss();
                 }
 
                 @Override
                 public void onError(String error) {
+                    if (!isAdded()) {
+                        return;
+                    }
                     if (sendButton != null) {
                         sendButton.setEnabled(true);
                         sendButton.setText("Send Command");
                     }
-                    if (getContext() != null) {
-                        String errorMsg = error != null ? error : getString(R.string.error_payload_send_failed);
-                        Toast.makeText(getContext(), errorMsg, Toast.LENGTH_LONG).show();
-                    }
+                    String errorMsg = error != null ? error : getString(R.string.error_payload_send_failed);
+                    Toast.makeText(requireContext(), errorMsg, Toast.LENGTH_LONG).show();
                 }
             });
             return;
         }
 
+        if (!collectParameters(parameterValues, parameterDefinitions)) {
+            return;
+        }
+
+        // Show loading feedback
+        if (sendButton != null) {
+            sendButton.setEnabled(false);
+            sendButton.setText("Connecting...");
+        }
+
+        // Send command - ViewModel will handle connection automatically
+        viewModel.sendCommand(command.getPayload(), parameterValues, parameterDefinitions, new CommandViewModel.SendCommandCallback() {
+            @Override
+            public void onSuccess(String payload) {
+                // The reply can come after the dialog was closed
+                if (!isAdded()) {
+                    return;
+                }
+                if (sendButton != null) {
+                    sendButton.setEnabled(true);
+                    sendButton.setText("Send Command");
+                }
+                Toast.makeText(requireContext(), "Command sent successfully", Toast.LENGTH_SHORT).show();
+                dismissAllowingStateLoss();
+            }
+
+            @Override
+            public void onError(String error) {
+                if (!isAdded()) {
+                    return;
+                }
+                if (sendButton != null) {
+                    sendButton.setEnabled(true);
+                    sendButton.setText("Send Command");
+                }
+                Toast.makeText(requireContext(), "Error: " + error, Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    /**
+     * Validate the entered values and collect them with their definitions.
+     * @return false if a value is invalid; the field shows why
+     */
+    private boolean collectParameters(Map<String, String> parameterValues,
+                                      Map<String, com.example.integraa_android_junaid.domain.model.Parameter> parameterDefinitions) {
+        if (command.getParameters() == null) {
+            return true;
+        }
+        boolean isValid = true;
         for (Map.Entry<String, Parameter> entry : command.getParameters().entrySet()) {
             try {
                 String paramKey = entry.getKey();
@@ -294,8 +386,9 @@ public class CommandDialogFragment extends DialogFragment {
                     continue;
                 }
 
-                // Skip checksum
+                // Checksum has no input, but its definition selects the algorithm
                 if ("CHK".equalsIgnoreCase(paramKey) || "checksum".equalsIgnoreCase(param.getType())) {
+                    parameterDefinitions.put(paramKey, toDomainParameter(paramKey, param));
                     continue;
                 }
 
@@ -307,42 +400,21 @@ public class CommandDialogFragment extends DialogFragment {
 
                 String value = editText.getText() != null ? editText.getText().toString().trim() : "";
 
-                // Validate required
-                if (param.getRequired() != null && !param.getRequired().isEmpty()) {
-                    if (!ValidationUtils.validateInput(value, param.getRequired())) {
-                        if (editText != null && getContext() != null) {
-                            editText.setError(getString(R.string.error_parameter_invalid_format));
-                        }
-                        isValid = false;
-                        continue;
-                    }
+                // Validated as the user typed; only look up the latest result
+                ParameterValidator.Result result = validationResults.get(paramKey);
+                if (result == null) {
+                    ParameterValidator validator = parameterValidators.get(paramKey);
+                    result = validator != null ? validator.validate(value) : ParameterValidator.Result.VALID;
                 }
-
-                // Validate integer min/max
-                if ("int".equalsIgnoreCase(param.getType())) {
-                    if (!ValidationUtils.validateInteger(value, param.getMin(), param.getMax())) {
-                        if (editText != null && getContext() != null) {
-                            editText.setError(getString(R.string.error_parameter_out_of_range));
-                        }
-                        isValid = false;
-                        continue;
-                    }
+                if (result != ParameterValidator.Result.VALID) {
+                    showValidationError(editText, result);
+                    isValid = false;
+                    continue;
                 }
 
                 parameterValues.put(paramKey, value);
                 
-                // Convert to domain parameter
-                com.example.integraa_android_junaid.domain.model.Parameter domainParam = 
-                    new com.example.integraa_android_junaid.domain.model.Parameter(
-                        paramKey,
-                        param.getLabel(),
-                        param.getType(),
-                        param.getValue(),
-                        param.getRequired(),
-                        param.getMin(),
-                        param.getMax()
-                );
-                parameterDefinitions.put(paramKey, domainParam);
+                parameterDefinitions.put(paramKey, toDomainParameter(paramKey, param));
             } catch (Exception e) {
                 e.printStackTrace();
                 isValid = false;
@@ -350,37 +422,54 @@ public class CommandDialogFragment extends DialogFragment {
             }
         }
 
-        if (!isValid) {
+        return isValid;
+    }
+
+    /**
+     * Queue the command with the entered values for a script run from the main screen.
+     */
+    private void addToScript() {
+        if (command == null || getActivity() == null) {
             return;
         }
-
-        // Show loading feedback
-        if (sendButton != null) {
-            sendButton.setEnabled(false);
-            sendButton.setText("Connecting...");
+        Map<String, String> parameterValues = new HashMap<>();
+        Map<String, com.example.integraa_android_junaid.domain.model.Parameter> parameterDefinitions = new HashMap<>();
+        if (!collectParameters(parameterValues, parameterDefinitions)) {
+            return;
         }
+        MainViewModel mainViewModel = new ViewModelProvider(requireActivity()).get(MainViewModel.class);
+        mainViewModel.addScriptStep(new com.example.integraa_android_junaid.domain.model.Command(
+                commandKey, command.getLabel(), command.getPayload(), parameterDefinitions), parameterValues);
+        Toast.makeText(getContext(), getString(R.string.script_step_added), Toast.LENGTH_SHORT).show();
+        dismiss();
+    }
 
-        // Send command - ViewModel will handle connection automatically
-        viewModel.sendCommand(command.getPayload(), parameterValues, parameterDefinitions, new CommandViewModel.SendCommandCallback() {
-            @Override
-            public void onSuccess(String payload) {
-                if (sendButton != null) {
-                    sendButton.setEnabled(true);
-                    sendButton.setText("Send Command");
-                }
-                Toast.makeText(getContext(), "Command sent successfully", Toast.LENGTH_SHORT).show();
-                dismiss();
-            }
+    private static com.example.integraa_android_junaid.domain.model.Parameter toDomainParameter(String paramKey, Parameter param) {
+        return new com.example.integraa_android_junaid.domain.model.Parameter(
+                paramKey,
+                param.getLabel(),
+                param.getType(),
+                param.getValue(),
+                param.getRequired(),
+                param.getMin(),
+                param.getMax()
+        );
+    }
 
-            @Override
-            public void onError(String error) {
-                if (sendButton != null) {
-                    sendButton.setEnabled(true);
-                    sendButton.setText("Send Command");
-                }
-                Toast.makeText(getContext(), "Error: " + error, Toast.LENGTH_LONG).show();
-            }
-        });
+    private void showValidationError(TextInputEditText editText, ParameterValidator.Result result) {
+        if (getContext() == null) {
+            return;
+        }
+        switch (result) {
+            case INVALID_FORMAT:
+                editText.setError(getString(R.string.error_parameter_invalid_format));
+                break;
+            case OUT_OF_RANGE:
+                editText.setError(getString(R.string.error_parameter_out_of_range));
+                break;
+            default:
+                editText.setError(null);
+                break;
+        }
     }
 }
-
@@ -1,8 +1,14 @@
 package com.example.integraa_android_junaid.ui.command;
 
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.lifecycle.LiveData;
 import androidx.lifecycle.ViewModel;
 
 import com.example.integraa_android_junaid.data.bluetooth.BluetoothManager;
+import com.example.integraa_android_junaid.data.bluetooth.BluetoothSessionManager;
+import com.example.integraa_android_junaid.data.bluetooth.ConnectionState;
 import com.example.integraa_android_junaid.data.local.SharedPreferencesManager;
 import com.example.integraa_android_junaid.domain.model.Parameter;
 import com.example.integraa_android_junaid.domain.usecase.SendCommandUseCase;
@@ -17,20 +23,19 @@ import dagger.hilt.android.lifecycle.HiltViewModel;
 public class CommandViewModel extends ViewModel {
     private final SendCommandUseCase sendCommandUseCase;
     private final BluetoothManager bluetoothManager;
+    private final BluetoothSessionManager sessionManager;
     private final SharedPreferencesManager preferencesManager;
+    // Bluetooth replies arrive on the GATT thread; the dialog callbacks touch views
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     @Inject
-    public CommandViewModel(SendCommandUseCase sendCommandUseCase, BluetoothManager bluetoothManager, SharedPreferencesManager preferencesManager) {
+    public CommandViewModel(SendCommandUseCase sendCommandUseCase, BluetoothManager bluetoothManager, BluetoothSessionManager sessionManager, SharedPreferencesManager preferencesManager) {
         this.sendCommandUseCase = sendCommandUseCase;
         this.bluetoothManager = bluetoothManager;
+        this.sessionManager = sessionManager;
         this.preferencesManager = preferencesManager;
     }
 
-    private SendCommandCallback pendingCallback;
-    private String pendingPayload;
-    private Map<String, String> pendingParameterValues;
-    private Map<String, Parameter> pendingParameterDefinitions;
-
     public void sendCommand(String payload, Map<String, String> parameterValues, Map<String, Parameter> parameterDefinitions, SendCommandCallback callback) {
         // First check if a device is selected
         String deviceAddress = preferencesManager.getBluetoothDeviceAddress();
@@ -39,104 +44,46 @@ public class CommandViewModel extends ViewModel {
             return;
         }
 
-        // Check if device is already connected, if not, connect to saved device
-        if (!bluetoothManager.isConnected()) {
-            // Store command details for when connection completes
-            pendingCallback = callback;
-            pendingPayload = payload;
-            pendingParameterValues = parameterValues;
-            pendingParameterDefinitions = parameterDefinitions;
-
-            // Connect to the saved device (one-time connection as per requirements)
-            bluetoothManager.connectToDeviceByAddress(deviceAddress, new BluetoothManager.BluetoothGattCallback() {
-                @Override
-                public void onConnected() {
-                    // Device connected, wait for services discovery
-                    android.util.Log.d("CommandViewModel", "Device connected, waiting for services...");
-                    // Notify MainActivity to update connection status
-                    updateMainActivityConnectionStatus();
-                }
-
-                @Override
-                public void onDisconnected() {
-                    if (pendingCallback != null) {
-                        pendingCallback.onError("Device disconnected");
-                        clearPendingCommand();
-                    }
-                }
-
-                @Override
-                public void onServicesDiscovered() {
-                    // Services discovered, now we can send the command
-                    android.util.Log.d("CommandViewModel", "Services discovered, sending command...");
-                    // Notify MainActivity to update connection status
-                    updateMainActivityConnectionStatus();
-                    if (pendingPayload != null && pendingCallback != null) {
-                        sendCommandInternal(pendingPayload, pendingParameterValues, pendingParameterDefinitions, pendingCallback);
-                        clearPendingCommand();
-                    }
-                }
-
-                @Override
-                public void onConnectionFailed(String error) {
-                    if (pendingCallback != null) {
-                        String errorMsg = "Failed to connect to device";
-                        if (error != null && !error.isEmpty()) {
-                            errorMsg += ": " + error;
-                        } else {
-                            errorMsg += ". Please ensure the device is nearby, powered on, and try again.";
-                        }
-                        pendingCallback.onError(errorMsg);
-                        clearPendingCommand();
-                    }
-                }
-            });
-        } else {
-            // Already connected, send command directly
+        // Frame building and the send run on the Bluetooth thread so a slow radio can't stall
+        // the UI; the result is posted back to the main thread
+        bluetoothManager.getGattExecutor().execute(() -> {
+            // Reuses the warm session link; if it is still connecting the send waits for it
+            sessionManager.startSession(deviceAddress);
             sendCommandInternal(payload, parameterValues, parameterDefinitions, callback);
-        }
-    }
-
-    private void clearPendingCommand() {
-        pendingCallback = null;
-        pendingPayload = null;
-        pendingParameterValues = null;
-        pendingParameterDefinitions = null;
+        });
     }
 
     private void sendCommandInternal(String payload, Map<String, String> parameterValues, Map<String, Parameter> parameterDefinitions, SendCommandCallback callback) {
-        // Use the PayloadBuilder with parameter definitions for proper value transformation
-        com.example.integraa_android_junaid.domain.model.PayloadBuilder payloadBuilder = 
-            new com.example.integraa_android_junaid.domain.model.PayloadBuilder(
-                new com.example.integraa_android_junaid.domain.usecase.CalculateChecksumUseCase()
-            );
-
-        try {
-            String finalPayload = payloadBuilder.buildPayload(payload, parameterValues, parameterDefinitions);
-            BluetoothManager.SendResult result = bluetoothManager.sendHexPayload(finalPayload);
-            if (result.isSuccess()) {
-                callback.onSuccess(finalPayload);
-            } else {
-                String errorMsg = result.getErrorMessage();
+        // The use case queues the request and reports back once the device replied to it
+        sendCommandUseCase.execute(payload, parameterValues, parameterDefinitions, new SendCommandUseCase.SendCommandCallback() {
+            @Override
+            public void onSuccess(String finalPayload, String response, long latencyMs) {
+                if (response != null) {
+                    android.util.Log.d("CommandViewModel", "Device replied " + response + " in " + latencyMs + " ms");
+                } else {
+                    android.util.Log.d("CommandViewModel", "Command acknowledged in " + latencyMs + " ms");
+                }
+                mainHandler.post(() -> callback.onSuccess(finalPayload));
+            }
+
+            @Override
+            public void onError(String error) {
+                String errorMsg = error;
                 if (errorMsg == null || errorMsg.isEmpty()) {
                     errorMsg = "Failed to send command to device. Please check the connection and try again.";
                 }
-                callback.onError(errorMsg);
+                String message = errorMsg;
+                mainHandler.post(() -> callback.onError(message));
             }
-        } catch (IllegalArgumentException e) {
-            callback.onError("Invalid command format. Please try again or contact support.");
-        } catch (Exception e) {
-            callback.onError("Error processing command. Please try again.");
-        }
+        });
     }
 
     public boolean isBluetoothConnected() {
         return bluetoothManager.isConnected();
     }
-    
-    private void updateMainActivityConnectionStatus() {
-        // This will be called from MainActivity if needed
-        // For now, we'll rely on MainActivity's onResume and manual updates
+
+    public LiveData<ConnectionState> getConnectionState() {
+        return bluetoothManager.getConnectionState();
     }
 
     public interface SendCommandCallback {
@@ -25,8 +25,10 @@ import com.google.android.material.chip.Chip;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.tabs.TabLayout;
 import com.google.android.material.tabs.TabLayoutMediator;
-import com.example.integraa_android_junaid.data.bluetooth.BluetoothManager;
+import com.example.integraa_android_junaid.data.bluetooth.ConnectionState;
 import com.example.integraa_android_junaid.data.local.SharedPreferencesManager;
+import com.example.integraa_android_junaid.domain.model.CommandScriptResult;
+import com.example.integraa_android_junaid.domain.model.FleetReport;
 
 import java.util.List;
 
@@ -41,6 +43,8 @@ public class MainActivity extends AppCompatActivity {
     private TabLayout tabLayout;
     private ProgressBar progressBar;
     private TextView errorTextView;
+    // Progress of a script or fleet job; the jobs themselves outlive this activity
+    private TextView jobStatusTextView;
     private FloatingActionButton settingsFab;
     private MainPagerAdapter pagerAdapter;
     private TabLayoutMediator tabLayoutMediator;
@@ -48,9 +52,6 @@ public class MainActivity extends AppCompatActivity {
     private static final long FAB_CLICK_THROTTLE_MS = 1000; // Prevent rapid clicks
     private Chip connectionStatusChip;
     
-    @Inject
-    BluetoothManager bluetoothManager;
-    
     @Inject
     SharedPreferencesManager preferencesManager;
 
@@ -79,82 +80,66 @@ public class MainActivity extends AppCompatActivity {
             
             // Schedule background permission refresh
             WorkManagerHelper.schedulePermissionRefresh(this);
-            
-            // Update connection status
-            updateConnectionStatus();
+            // Commands that didn't reach their meter before the app was closed
+            WorkManagerHelper.scheduleOutboxDrain(this);
+            WorkManagerHelper.scheduleAuditUpload(this);
         } catch (Exception e) {
             e.printStackTrace();
             Toast.makeText(this, "Error initializing activity: " + e.getMessage(), Toast.LENGTH_LONG).show();
         }
     }
     
-    @Override
-    protected void onResume() {
-        super.onResume();
-        // Update connection status when activity resumes
-        updateConnectionStatus();
-        
-        // Also set up a handler to periodically check connection status
-        // This helps catch connection state changes
-        if (connectionStatusChip != null) {
-            android.os.Handler handler = new android.os.Handler(android.os.Looper.getMainLooper());
-            handler.postDelayed(() -> updateConnectionStatus(), 1000);
-        }
-    }
-    
     /**
      * Called when a device is selected in BluetoothSettingsFragment
      */
     public void onDeviceSelected() {
-        updateConnectionStatus();
+        // The session connects right away; until it does, show the new selection
+        renderConnectionState(viewModel.getConnectionState().getValue());
     }
 
-    private void updateConnectionStatus() {
+    private void renderConnectionState(ConnectionState state) {
         if (connectionStatusChip == null) {
             return;
         }
-        
-        // Run on UI thread to ensure thread safety
-        runOnUiThread(() -> {
-            try {
-                String deviceAddress = preferencesManager.getBluetoothDeviceAddress();
-                boolean isConnected = bluetoothManager != null && bluetoothManager.isConnected();
-                
-                if (deviceAddress == null || deviceAddress.isEmpty()) {
+        if (state == null) {
+            state = ConnectionState.IDLE;
+        }
+        String deviceName = state.getDeviceName();
+        switch (state.getPhase()) {
+            case READY:
+            case BUSY:
+                connectionStatusChip.setText(deviceName != null ? "Connected: " + shorten(deviceName) : "Connected");
+                connectionStatusChip.setChipBackgroundColorResource(android.R.color.holo_green_light);
+                break;
+            case CONNECTING:
+            case DISCOVERING:
+                connectionStatusChip.setText(deviceName != null ? "Connecting: " + shorten(deviceName) : "Connecting...");
+                connectionStatusChip.setChipBackgroundColorResource(android.R.color.holo_orange_light);
+                break;
+            case DISCONNECTED:
+                connectionStatusChip.setText(deviceName != null ? "Selected: " + shorten(deviceName) : "Device Selected");
+                connectionStatusChip.setChipBackgroundColorResource(android.R.color.holo_orange_light);
+                break;
+            default:
+                // No link yet this run; the saved selection connects with the first command
+                String savedAddress = preferencesManager.getBluetoothDeviceAddress();
+                if (savedAddress == null || savedAddress.isEmpty()) {
                     connectionStatusChip.setText("No Device");
                     connectionStatusChip.setChipBackgroundColorResource(android.R.color.holo_red_light);
-                } else if (isConnected) {
-                    String deviceName = preferencesManager.getBluetoothDeviceName();
-                    if (deviceName != null && !deviceName.isEmpty()) {
-                        // Truncate long names
-                        if (deviceName.length() > 15) {
-                            deviceName = deviceName.substring(0, 12) + "...";
-                        }
-                        connectionStatusChip.setText("Connected: " + deviceName);
-                    } else {
-                        connectionStatusChip.setText("Connected");
-                    }
-                    connectionStatusChip.setChipBackgroundColorResource(android.R.color.holo_green_light);
                 } else {
-                    String deviceName = preferencesManager.getBluetoothDeviceName();
-                    if (deviceName != null && !deviceName.isEmpty()) {
-                        if (deviceName.length() > 15) {
-                            deviceName = deviceName.substring(0, 12) + "...";
-                        }
-                        connectionStatusChip.setText("Selected: " + deviceName);
-                    } else {
-                        connectionStatusChip.setText("Device Selected");
-                    }
+                    String savedName = preferencesManager.getBluetoothDeviceName();
+                    connectionStatusChip.setText(savedName != null && !savedName.isEmpty() ? "Selected: " + shorten(savedName) : "Device Selected");
                     connectionStatusChip.setChipBackgroundColorResource(android.R.color.holo_orange_light);
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
-                connectionStatusChip.setText("Status Unknown");
-                connectionStatusChip.setChipBackgroundColorResource(android.R.color.holo_red_light);
-            }
-        });
+                break;
+        }
     }
-    
+
+    private static String shorten(String deviceName) {
+        // Truncate long names
+        return deviceName.length() > 15 ? deviceName.substring(0, 12) + "..." : deviceName;
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
@@ -171,6 +156,7 @@ public class MainActivity extends AppCompatActivity {
             tabLayout = findViewById(R.id.tabLayout);
             progressBar = findViewById(R.id.progressBar);
             errorTextView = findViewById(R.id.errorTextView);
+            jobStatusTextView = findViewById(R.id.jobStatusTextView);
             settingsFab = findViewById(R.id.settingsFab);
             connectionStatusChip = findViewById(R.id.connectionStatusChip);
             
@@ -203,6 +189,8 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void setupObservers() {
+        viewModel.getConnectionState().observe(this, this::renderConnectionState);
+
         viewModel.getIsLoading().observe(this, isLoading -> {
             if (progressBar != null) {
                 progressBar.setVisibility(isLoading ? View.VISIBLE : View.GONE);
@@ -269,6 +257,25 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        viewModel.getScriptStepsDone().observe(this, done -> {
+            int size = viewModel.getRunningScriptSize();
+            if (done != null && done < size) {
+                showJobStatus(getString(R.string.script_running, done, size));
+            }
+        });
+
+        viewModel.getScriptResult().observe(this, this::renderScriptResult);
+
+        viewModel.getFleetReport().observe(this, this::renderFleetReport);
+
+        viewModel.getJobError().observe(this, error -> {
+            if (error != null) {
+                showJobStatus(null);
+                Toast.makeText(this, error, Toast.LENGTH_LONG).show();
+                viewModel.onJobErrorShown();
+            }
+        });
+
         viewModel.getSessionExpired().observe(this, expired -> {
             if (expired) {
                 new AlertDialog.Builder(this)
@@ -287,6 +294,47 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    private void renderScriptResult(CommandScriptResult result) {
+        if (result == null) {
+            return;
+        }
+        int total = result.getSteps().size();
+        String message = getString(R.string.script_finished, total - result.getFailedCount(), total);
+        showJobStatus(message);
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+        viewModel.onScriptResultShown();
+    }
+
+    private void renderFleetReport(FleetReport report) {
+        if (report == null) {
+            return;
+        }
+        if (report.isFinished()) {
+            showJobStatus(getString(R.string.fleet_finished, report.getSucceeded(), report.getTotal(), report.getFailed()));
+        } else {
+            showJobStatus(getString(R.string.fleet_progress, report.getSucceeded() + report.getFailed(), report.getTotal(),
+                    report.getFailed(), report.getMetersPerMinute()));
+        }
+        viewModel.onFleetReportShown();
+    }
+
+    private void showJobStatus(String status) {
+        if (jobStatusTextView == null) {
+            return;
+        }
+        jobStatusTextView.setText(status);
+        jobStatusTextView.setVisibility(status != null ? View.VISIBLE : View.GONE);
+    }
+
+    private boolean hasScript() {
+        Integer size = viewModel.getScriptSize().getValue();
+        if (size == null || size == 0) {
+            Toast.makeText(this, getString(R.string.script_empty), Toast.LENGTH_SHORT).show();
+            return false;
+        }
+        return true;
+    }
+
     private void showSettingsDialog() {
         // Throttle rapid clicks
         long currentTime = System.currentTimeMillis();
@@ -344,6 +392,15 @@ public class MainActivity extends AppCompatActivity {
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        MenuItem cancelFleet = menu.findItem(R.id.menu_cancel_fleet);
+        if (cancelFleet != null) {
+            cancelFleet.setVisible(viewModel.isFleetRunning());
+        }
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(@NonNull MenuItem item) {
         if (item.getItemId() == R.id.menu_logout) {
@@ -355,6 +412,22 @@ public class MainActivity extends AppCompatActivity {
         } else if (item.getItemId() == R.id.menu_refresh) {
             viewModel.refreshPermissions();
             return true;
+        } else if (item.getItemId() == R.id.menu_run_script) {
+            if (hasScript()) {
+                viewModel.runScript();
+            }
+            return true;
+        } else if (item.getItemId() == R.id.menu_run_script_fleet) {
+            if (hasScript() && viewModel.runScriptOnKnownMeters() == 0) {
+                Toast.makeText(this, getString(R.string.fleet_no_known_meters), Toast.LENGTH_LONG).show();
+            }
+            return true;
+        } else if (item.getItemId() == R.id.menu_cancel_fleet) {
+            viewModel.cancelFleet();
+            return true;
+        } else if (item.getItemId() == R.id.menu_clear_script) {
+            viewModel.clearScript();
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
@@ -6,12 +6,22 @@ import androidx.lifecycle.ViewModel;
 
 import com.example.integraa_android_junaid.data.api.models.Action;
 import com.example.integraa_android_junaid.data.api.models.PermissionResponse;
+import com.example.integraa_android_junaid.data.bluetooth.BluetoothDeviceModel;
+import com.example.integraa_android_junaid.data.bluetooth.BluetoothManager;
+import com.example.integraa_android_junaid.data.bluetooth.ConnectionState;
+import com.example.integraa_android_junaid.data.local.SharedPreferencesManager;
 import com.example.integraa_android_junaid.data.repository.AuthRepository;
 import com.example.integraa_android_junaid.data.repository.PermissionRepository;
+import com.example.integraa_android_junaid.domain.model.Command;
+import com.example.integraa_android_junaid.domain.model.CommandScript;
+import com.example.integraa_android_junaid.domain.model.CommandScriptResult;
+import com.example.integraa_android_junaid.domain.model.FleetReport;
 import com.example.integraa_android_junaid.domain.usecase.GetPermissionsUseCase;
+import com.example.integraa_android_junaid.service.BleJobRunner;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 
@@ -21,16 +31,27 @@ import dagger.hilt.android.lifecycle.HiltViewModel;
 public class MainViewModel extends ViewModel {
     private final GetPermissionsUseCase getPermissionsUseCase;
     private final AuthRepository authRepository;
+    private final BluetoothManager bluetoothManager;
+    private final SharedPreferencesManager preferencesManager;
+    private final BleJobRunner jobRunner;
 
     private final MutableLiveData<Boolean> isLoading = new MutableLiveData<>(false);
     private final MutableLiveData<List<ActionGroup>> actionGroups = new MutableLiveData<>();
     private final MutableLiveData<String> error = new MutableLiveData<>();
     private final MutableLiveData<Boolean> sessionExpired = new MutableLiveData<>(false);
+    // Commands collected from the command dialogs, run together on one or many meters
+    private CommandScript script = new CommandScript();
+    private final MutableLiveData<Integer> scriptSize = new MutableLiveData<>(0);
+    private int runningScriptSize = 0;
 
     @Inject
-    public MainViewModel(GetPermissionsUseCase getPermissionsUseCase, AuthRepository authRepository) {
+    public MainViewModel(GetPermissionsUseCase getPermissionsUseCase, AuthRepository authRepository, BluetoothManager bluetoothManager,
+                         SharedPreferencesManager preferencesManager, BleJobRunner jobRunner) {
         this.getPermissionsUseCase = getPermissionsUseCase;
         this.authRepository = authRepository;
+        this.bluetoothManager = bluetoothManager;
+        this.preferencesManager = preferencesManager;
+        this.jobRunner = jobRunner;
     }
 
     public LiveData<Boolean> getIsLoading() {
@@ -49,6 +70,103 @@ public class MainViewModel extends ViewModel {
         return sessionExpired;
     }
 
+    public LiveData<ConnectionState> getConnectionState() {
+        return bluetoothManager.getConnectionState();
+    }
+
+    public void addScriptStep(Command command, Map<String, String> parameterValues) {
+        script.addStep(command, parameterValues);
+        scriptSize.setValue(script.size());
+    }
+
+    public void clearScript() {
+        script = new CommandScript();
+        scriptSize.setValue(0);
+    }
+
+    public LiveData<Integer> getScriptSize() {
+        return scriptSize;
+    }
+
+    /**
+     * Run the collected commands on the selected meter. The run goes on in the background
+     * if the app is left.
+     */
+    public void runScript() {
+        runningScriptSize = script.size();
+        jobRunner.runScript(preferencesManager.getBluetoothDeviceAddress(), snapshotScript());
+    }
+
+    /**
+     * Commands in the script started last
+     */
+    public int getRunningScriptSize() {
+        return runningScriptSize;
+    }
+
+    /**
+     * Run the collected commands on every meter this app has connected to before.
+     * @return How many meters the job was started for
+     */
+    public int runScriptOnKnownMeters() {
+        List<String> addresses = new ArrayList<>();
+        for (BluetoothDeviceModel device : bluetoothManager.getKnownDevices()) {
+            addresses.add(device.getAddress());
+        }
+        if (addresses.isEmpty()) {
+            return 0;
+        }
+        jobRunner.provisionFleet(addresses, snapshotScript());
+        return addresses.size();
+    }
+
+    /**
+     * The running job gets its own copy, so commands added meanwhile don't change it.
+     */
+    private CommandScript snapshotScript() {
+        CommandScript copy = new CommandScript();
+        for (CommandScript.Step step : script.getSteps()) {
+            copy.addStep(step.getCommand(), step.getParameterValues());
+        }
+        return copy;
+    }
+
+    public void cancelFleet() {
+        jobRunner.cancelFleet();
+    }
+
+    public boolean isFleetRunning() {
+        return jobRunner.isFleetRunning();
+    }
+
+    public LiveData<Integer> getScriptStepsDone() {
+        return jobRunner.getScriptStepsDone();
+    }
+
+    public LiveData<CommandScriptResult> getScriptResult() {
+        return jobRunner.getScriptResult();
+    }
+
+    public LiveData<FleetReport> getFleetReport() {
+        return jobRunner.getFleetReport();
+    }
+
+    public LiveData<String> getJobError() {
+        return jobRunner.getJobError();
+    }
+
+    public void onScriptResultShown() {
+        jobRunner.onScriptResultShown();
+    }
+
+    public void onFleetReportShown() {
+        jobRunner.onFleetReportShown();
+    }
+
+    public void onJobErrorShown() {
+        jobRunner.onJobErrorShown();
+    }
+
     public void loadPermissions() {
         isLoading.setValue(true);
         error.setValue(null);
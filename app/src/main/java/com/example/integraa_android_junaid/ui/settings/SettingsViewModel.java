@@ -6,6 +6,7 @@ import androidx.lifecycle.ViewModel;
 
 import com.example.integraa_android_junaid.data.bluetooth.BluetoothDeviceModel;
 import com.example.integraa_android_junaid.data.bluetooth.BluetoothManager;
+import com.example.integraa_android_junaid.data.bluetooth.BluetoothSessionManager;
 import com.example.integraa_android_junaid.data.local.SharedPreferencesManager;
 
 import java.util.List;
@@ -19,6 +20,7 @@ import dagger.hilt.android.lifecycle.HiltViewModel;
 @HiltViewModel
 public class SettingsViewModel extends ViewModel {
     private final BluetoothManager bluetoothManager;
+    private final BluetoothSessionManager sessionManager;
     private final SharedPreferencesManager preferencesManager;
     private final ExecutorService executorService = Executors.newSingleThreadExecutor();
     private boolean isLoadingDevices = false;
@@ -31,8 +33,9 @@ public class SettingsViewModel extends ViewModel {
     private final MutableLiveData<Boolean> isScanning = new MutableLiveData<>(false);
 
     @Inject
-    public SettingsViewModel(BluetoothManager bluetoothManager, SharedPreferencesManager preferencesManager) {
+    public SettingsViewModel(BluetoothManager bluetoothManager, BluetoothSessionManager sessionManager, SharedPreferencesManager preferencesManager) {
         this.bluetoothManager = bluetoothManager;
+        this.sessionManager = sessionManager;
         this.preferencesManager = preferencesManager;
         loadSelectedDevice();
     }
@@ -97,7 +100,17 @@ public class SettingsViewModel extends ViewModel {
         executorService.execute(() -> {
             try {
                 android.util.Log.d("SettingsViewModel", "Fetching paired devices from BluetoothManager...");
-                List<BluetoothDeviceModel> devices = bluetoothManager.getPairedDevices();
+                // Meters connected before first, then bonded devices not among them
+                List<BluetoothDeviceModel> devices = bluetoothManager.getKnownDevices();
+                java.util.Set<String> listed = new java.util.HashSet<>();
+                for (BluetoothDeviceModel device : devices) {
+                    listed.add(device.getAddress());
+                }
+                for (BluetoothDeviceModel device : bluetoothManager.getPairedDevices()) {
+                    if (listed.add(device.getAddress())) {
+                        devices.add(device);
+                    }
+                }
                 android.util.Log.d("SettingsViewModel", "Found " + (devices != null ? devices.size() : 0) + " devices");
                 pairedDevices.postValue(devices != null ? devices : new java.util.ArrayList<>());
             } catch (Exception e) {
@@ -122,25 +135,9 @@ public class SettingsViewModel extends ViewModel {
 
         bluetoothManager.startScanning(new BluetoothManager.BluetoothScanCallback() {
             @Override
-            public void onDeviceFound(BluetoothDeviceModel device) {
-                List<BluetoothDeviceModel> currentDevices = scannedDevices.getValue();
-                if (currentDevices == null) {
-                    currentDevices = new java.util.ArrayList<>();
-                }
-                
-                // Check if device already exists
-                boolean exists = false;
-                for (BluetoothDeviceModel existing : currentDevices) {
-                    if (existing.getAddress().equals(device.getAddress())) {
-                        exists = true;
-                        break;
-                    }
-                }
-                
-                if (!exists) {
-                    currentDevices.add(device);
-                    scannedDevices.postValue(new java.util.ArrayList<>(currentDevices));
-                }
+            public void onDevicesUpdated(List<BluetoothDeviceModel> devices) {
+                // Already deduplicated and sorted, and throttled by the scanner
+                scannedDevices.setValue(devices);
             }
 
             @Override
@@ -170,6 +167,9 @@ public class SettingsViewModel extends ViewModel {
             
             // Stop scanning when device is selected
             stopScanning();
+
+            // Open the session now so the first command doesn't pay for the connection
+            sessionManager.startSession(device.getAddress());
         }
     }
 
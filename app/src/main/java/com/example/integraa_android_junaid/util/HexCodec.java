@@ -0,0 +1,163 @@
+package com.example.integraa_android_junaid.util;
+
+import java.util.Arrays;
+
+/**
+ * Table-driven hex encoding and decoding shared by the payload, checksum and BLE code.
+ * Works directly on char and byte arrays; no regex, String.format or Integer.parseInt.
+ * Decoding accepts upper and lower case and ignores whitespace; encoding is upper case.
+ */
+public final class HexCodec {
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+    // Digit value per ASCII char, -1 for anything that isn't a hex digit
+    private static final byte[] VALUES = new byte[128];
+    // "00".."FF", so single bytes don't need a new String each time
+    private static final String[] BYTE_STRINGS = new String[256];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            VALUES['A' + i] = (byte) (10 + i);
+            VALUES['a' + i] = (byte) (10 + i);
+        }
+        for (int i = 0; i < 256; i++) {
+            BYTE_STRINGS[i] = new String(new char[] {DIGITS[i >>> 4], DIGITS[i & 0x0F]});
+        }
+    }
+
+    private HexCodec() {
+    }
+
+    /**
+     * @return The digit's value 0-15, or -1 if the char is not a hex digit
+     */
+    public static int digit(char c) {
+        return c < 128 ? VALUES[c] : -1;
+    }
+
+    /**
+     * Two-character upper case hex for the low 8 bits of the value.
+     */
+    public static String byteToHex(int value) {
+        return BYTE_STRINGS[value & 0xFF];
+    }
+
+    public static String encode(byte[] bytes) {
+        return bytes == null ? null : encode(bytes, 0, bytes.length);
+    }
+
+    public static String encode(byte[] bytes, int offset, int length) {
+        char[] chars = new char[length * 2];
+        encode(bytes, offset, length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Encode into a caller-owned char array.
+     * @return Number of chars written (2 per byte)
+     */
+    public static int encode(byte[] bytes, int offset, int length, char[] out, int outOffset) {
+        int position = outOffset;
+        for (int i = offset; i < offset + length; i++) {
+            int b = bytes[i] & 0xFF;
+            out[position++] = DIGITS[b >>> 4];
+            out[position++] = DIGITS[b & 0x0F];
+        }
+        return position - outOffset;
+    }
+
+    /**
+     * @return true if the text is a non-empty, whole number of hex bytes (whitespace ignored)
+     */
+    public static boolean isValid(CharSequence hex) {
+        if (hex == null) {
+            return false;
+        }
+        int digits = 0;
+        for (int i = 0; i < hex.length(); i++) {
+            char c = hex.charAt(i);
+            if (digit(c) >= 0) {
+                digits++;
+            } else if (!Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return digits > 0 && (digits & 1) == 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException on a non-hex character or an odd number of digits
+     */
+    public static byte[] decode(CharSequence hex) {
+        byte[] compact = decodeCompact(hex);
+        if (compact != null) {
+            return compact;
+        }
+        int digits = 0;
+        for (int i = 0; i < hex.length(); i++) {
+            if (!Character.isWhitespace(hex.charAt(i))) {
+                digits++;
+            }
+        }
+        if ((digits & 1) != 0) {
+            throw new IllegalArgumentException("Hex string must have an even number of digits");
+        }
+        byte[] out = new byte[digits / 2];
+        decode(hex, out, 0);
+        return out;
+    }
+
+    /**
+     * Fast path for the usual case of digits only: one pass, no whitespace checks.
+     * @return null if the text contains anything but an even number of hex digits
+     */
+    private static byte[] decodeCompact(CharSequence hex) {
+        int length = hex.length();
+        if ((length & 1) != 0) {
+            return null;
+        }
+        byte[] out = new byte[length / 2];
+        for (int i = 0, j = 0; i < length; i += 2, j++) {
+            int high = digit(hex.charAt(i));
+            int low = digit(hex.charAt(i + 1));
+            if ((high | low) < 0) {
+                return null;
+            }
+            out[j] = (byte) ((high << 4) | low);
+        }
+        return out;
+    }
+
+    /**
+     * Decode into a caller-owned byte array.
+     * @return Number of bytes written
+     * @throws IllegalArgumentException on a non-hex character or an odd number of digits
+     */
+    public static int decode(CharSequence hex, byte[] out, int offset) {
+        int position = offset;
+        int high = -1;
+        for (int i = 0; i < hex.length(); i++) {
+            char c = hex.charAt(i);
+            int value = digit(c);
+            if (value < 0) {
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                throw new IllegalArgumentException("Invalid hex character: " + c);
+            }
+            if (high < 0) {
+                high = value;
+            } else {
+                out[position++] = (byte) ((high << 4) | value);
+                high = -1;
+            }
+        }
+        if (high >= 0) {
+            throw new IllegalArgumentException("Hex string must have an even number of digits");
+        }
+        return position - offset;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.integraa_android_junaid.util;
+
+import java.util.regex.Pattern;
+
+/**
+ * The checks the command dialog runs on one parameter, compiled once: the
+ * {@code required} regex and, for "int" parameters, the min/max range.
+ */
+public final class ParameterValidator {
+    public enum Result {
+        VALID,
+        INVALID_FORMAT,
+        OUT_OF_RANGE
+    }
+
+    private final Pattern pattern;
+    private final boolean integer;
+    private final Integer min;
+    private final Integer max;
+
+    private ParameterValidator(Pattern pattern, boolean integer, Integer min, Integer max) {
+        this.pattern = pattern;
+        this.integer = integer;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * @param regex The parameter's {@code required} regex; null or empty for none
+     * @param integer Whether the parameter has type "int" and is range checked
+     */
+    public static ParameterValidator compile(String regex, boolean integer, Integer min, Integer max) {
+        Pattern pattern = regex == null || regex.isEmpty() ? null : ValidationUtils.pattern(regex);
+        return new ParameterValidator(pattern, integer, min, max);
+    }
+
+    public Result validate(String input) {
+        if (pattern != null && (input == null || input.isEmpty() || !pattern.matcher(input).matches())) {
+            return Result.INVALID_FORMAT;
+        }
+        if (integer && !ValidationUtils.validateInteger(input, min, max)) {
+            return Result.OUT_OF_RANGE;
+        }
+        return Result.VALID;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.integraa_android_junaid.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled {@link ParameterValidator}s keyed by regex, type and range. Filled when the
+ * permission tree arrives and cleared when it is refreshed, so opening a command dialog
+ * and typing into it never compiles a regex.
+ */
+public class ParameterValidatorCache {
+    private final Map<String, ParameterValidator> validators = new ConcurrentHashMap<>();
+
+    /**
+     * Return the validator for these rules, compiling and caching it on a miss.
+     * @param type The parameter type; only "int" is range checked
+     */
+    public ParameterValidator get(String regex, String type, Integer min, Integer max) {
+        boolean integer = "int".equalsIgnoreCase(type);
+        String key = keyOf(regex, integer, min, max);
+        ParameterValidator validator = validators.get(key);
+        if (validator == null) {
+            validator = ParameterValidator.compile(regex, integer, min, max);
+            validators.put(key, validator);
+        }
+        return validator;
+    }
+
+    public void clear() {
+        validators.clear();
+    }
+
+    public int size() {
+        return validators.size();
+    }
+
+    private static String keyOf(String regex, boolean integer, Integer min, Integer max) {
+        if (!integer) {
+            return regex == null ? "" : regex;
+        }
+        return (regex == null ? "" : regex) + '\u0000' + min + ':' + max;
+    }
+}
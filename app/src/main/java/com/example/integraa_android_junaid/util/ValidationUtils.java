@@ -1,8 +1,15 @@
 package com.example.integraa_android_junaid.util;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class ValidationUtils {
+    private static final int MAX_PATTERNS = 256;
+    // Stands in for a regex that doesn't compile, so such input never validates
+    private static final Pattern NEVER_MATCHES = Pattern.compile("(?!)");
+    private static final Map<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
 
     public static boolean validateInput(String input, String regex) {
         if (input == null || input.isEmpty()) {
@@ -11,12 +18,7 @@ public class ValidationUtils {
         if (regex == null || regex.isEmpty()) {
             return true; // No validation required
         }
-        try {
-            Pattern pattern = Pattern.compile(regex);
-            return pattern.matcher(input).matches();
-        } catch (Exception e) {
-            return false;
-        }
+        return pattern(regex).matcher(input).matches();
     }
 
     public static boolean validateInteger(String input, Integer min, Integer max) {
@@ -33,5 +35,26 @@ public class ValidationUtils {
             return false;
         }
     }
-}
 
+    /**
+     * The compiled regex, compiled at most once per distinct regex string.
+     * An invalid regex yields a pattern that matches nothing.
+     */
+    static Pattern pattern(String regex) {
+        Pattern pattern = PATTERNS.get(regex);
+        if (pattern != null) {
+            return pattern;
+        }
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            pattern = NEVER_MATCHES;
+        }
+        if (PATTERNS.size() >= MAX_PATTERNS) {
+            // Regexes come from the permission tree, so this only trips if it changes a lot
+            PATTERNS.clear();
+        }
+        PATTERNS.put(regex, pattern);
+        return pattern;
+    }
+}
@@ -2,18 +2,25 @@ package com.example.integraa_android_junaid.util;
 
 import android.content.Context;
 
+import androidx.work.BackoffPolicy;
 import androidx.work.Constraints;
 import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
 import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
 import androidx.work.PeriodicWorkRequest;
 import androidx.work.WorkManager;
 
+import com.example.integraa_android_junaid.worker.AuditUploadWorker;
+import com.example.integraa_android_junaid.worker.OutboxDrainWorker;
 import com.example.integraa_android_junaid.worker.PermissionRefreshWorker;
 
 import java.util.concurrent.TimeUnit;
 
 public class WorkManagerHelper {
     private static final String PERMISSION_REFRESH_WORK_NAME = "permission_refresh_work";
+    private static final String OUTBOX_DRAIN_WORK_NAME = "outbox_drain_work";
+    private static final String AUDIT_UPLOAD_WORK_NAME = "audit_upload_work";
 
     public static void schedulePermissionRefresh(Context context) {
         Constraints constraints = new Constraints.Builder()
@@ -38,5 +45,41 @@ public class WorkManagerHelper {
     public static void cancelPermissionRefresh(Context context) {
         WorkManager.getInstance(context).cancelUniqueWork(PERMISSION_REFRESH_WORK_NAME);
     }
+
+    public static void scheduleAuditUpload(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+
+        // Periodic work request - uploads the audit log every 6 hours
+        PeriodicWorkRequest uploadWork = new PeriodicWorkRequest.Builder(
+                AuditUploadWorker.class,
+                6,
+                TimeUnit.HOURS)
+                .setConstraints(constraints)
+                .build();
+
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(
+                AUDIT_UPLOAD_WORK_NAME,
+                ExistingPeriodicWorkPolicy.KEEP,
+                uploadWork
+        );
+    }
+
+    /**
+     * Send the commands left in the outbox. The worker retries with backoff until the
+     * meters are in range; scheduling again while it is queued has no effect.
+     */
+    public static void scheduleOutboxDrain(Context context) {
+        OneTimeWorkRequest drainWork = new OneTimeWorkRequest.Builder(OutboxDrainWorker.class)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .build();
+
+        WorkManager.getInstance(context).enqueueUniqueWork(
+                OUTBOX_DRAIN_WORK_NAME,
+                ExistingWorkPolicy.KEEP,
+                drainWork
+        );
+    }
 }
 
@@ -0,0 +1,115 @@
+package com.example.integraa_android_junaid.worker;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.integraa_android_junaid.data.api.ApiService;
+import com.example.integraa_android_junaid.data.local.AuditLog;
+import com.example.integraa_android_junaid.data.local.SharedPreferencesManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import dagger.hilt.EntryPoint;
+import dagger.hilt.InstallIn;
+import dagger.hilt.android.EntryPointAccessors;
+import dagger.hilt.components.SingletonComponent;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+/**
+ * Uploads the sealed {@link AuditLog} segments, several segments per gzip-compressed
+ * request, and deletes them once the backend accepted them.
+ */
+public class AuditUploadWorker extends Worker {
+    private static final String TAG = "AuditUploadWorker";
+    // Uncompressed bytes per request; records compress well, so requests stay small
+    private static final long MAX_BATCH_BYTES = 2 * 1024 * 1024;
+    private static final MediaType AUDIT_LOG_TYPE = MediaType.get("application/octet-stream");
+
+    @EntryPoint
+    @InstallIn(SingletonComponent.class)
+    public interface Dependencies {
+        AuditLog auditLog();
+        ApiService apiService();
+        SharedPreferencesManager sharedPreferencesManager();
+    }
+
+    public AuditUploadWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Dependencies dependencies = EntryPointAccessors.fromApplication(getApplicationContext(), Dependencies.class);
+        String token = dependencies.sharedPreferencesManager().getToken();
+        if (token == null || token.isEmpty()) {
+            // Kept until someone logs in again
+            return Result.success();
+        }
+        AuditLog auditLog = dependencies.auditLog();
+        auditLog.sealActiveSegment();
+        List<File> segments = auditLog.getSealedSegments();
+
+        int requests = 0;
+        int index = 0;
+        while (index < segments.size()) {
+            if (isStopped()) {
+                return Result.retry();
+            }
+            List<File> batch = new ArrayList<>();
+            long batchBytes = 0;
+            while (index < segments.size() && (batch.isEmpty() || batchBytes + segments.get(index).length() <= MAX_BATCH_BYTES)) {
+                batchBytes += segments.get(index).length();
+                batch.add(segments.get(index++));
+            }
+            try {
+                byte[] body = gzip(batch);
+                Response<ResponseBody> response = dependencies.apiService()
+                        .uploadAuditLog(token, "gzip", RequestBody.create(body, AUDIT_LOG_TYPE))
+                        .execute();
+                if (!response.isSuccessful()) {
+                    Log.w(TAG, "Audit upload rejected with HTTP " + response.code());
+                    return Result.retry();
+                }
+                Log.d(TAG, "Uploaded " + batch.size() + " segment(s), " + batchBytes + " bytes as " + body.length);
+            } catch (IOException e) {
+                Log.w(TAG, "Audit upload failed", e);
+                return Result.retry();
+            }
+            auditLog.delete(batch);
+            requests++;
+        }
+        Log.d(TAG, "Audit log uploaded in " + requests + " request(s)");
+        return Result.success();
+    }
+
+    private static byte[] gzip(List<File> segments) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            for (File segment : segments) {
+                try (InputStream in = new FileInputStream(segment)) {
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        gzip.write(buffer, 0, read);
+                    }
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.integraa_android_junaid.worker;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.integraa_android_junaid.data.bluetooth.BluetoothManager;
+import com.example.integraa_android_junaid.data.bluetooth.WriteMode;
+import com.example.integraa_android_junaid.data.local.AuditLog;
+import com.example.integraa_android_junaid.data.local.CommandOutbox;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import dagger.hilt.EntryPoint;
+import dagger.hilt.InstallIn;
+import dagger.hilt.android.EntryPointAccessors;
+import dagger.hilt.components.SingletonComponent;
+
+/**
+ * Sends the commands left in the {@link CommandOutbox}, meter by meter. A meter that
+ * can't be reached keeps its commands and the work is retried with backoff.
+ */
+public class OutboxDrainWorker extends Worker {
+    private static final String TAG = "OutboxDrainWorker";
+    private static final long CONNECT_TIMEOUT_SECONDS = 45;
+    // Covers the GATT queue plus the reply timeout of a single request
+    private static final long SEND_TIMEOUT_SECONDS = 20;
+
+    @EntryPoint
+    @InstallIn(SingletonComponent.class)
+    public interface Dependencies {
+        CommandOutbox commandOutbox();
+        BluetoothManager bluetoothManager();
+        AuditLog auditLog();
+    }
+
+    public OutboxDrainWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Dependencies dependencies = EntryPointAccessors.fromApplication(getApplicationContext(), Dependencies.class);
+        CommandOutbox outbox = dependencies.commandOutbox();
+        List<CommandOutbox.Entry> pending = outbox.getPending();
+        if (pending.isEmpty()) {
+            return Result.success();
+        }
+        Log.d(TAG, "Draining " + pending.size() + " pending command(s)");
+
+        Map<String, List<CommandOutbox.Entry>> byDevice = new LinkedHashMap<>();
+        for (CommandOutbox.Entry entry : pending) {
+            List<CommandOutbox.Entry> entries = byDevice.get(entry.getAddress());
+            if (entries == null) {
+                entries = new ArrayList<>();
+                byDevice.put(entry.getAddress(), entries);
+            }
+            entries.add(entry);
+        }
+
+        boolean allSent = true;
+        for (Map.Entry<String, List<CommandOutbox.Entry>> device : byDevice.entrySet()) {
+            if (isStopped()) {
+                return Result.retry();
+            }
+            if (!drain(dependencies, device.getKey(), device.getValue())) {
+                allSent = false;
+            }
+        }
+        return allSent ? Result.success() : Result.retry();
+    }
+
+    private boolean drain(Dependencies dependencies, String address, List<CommandOutbox.Entry> entries) {
+        BluetoothManager bluetoothManager = dependencies.bluetoothManager();
+        // Listens alongside the session if it uses the same meter; releasing the link only
+        // closes it when nobody else needs it
+        BluetoothManager.BluetoothGattCallback link = connect(bluetoothManager, address);
+        if (link == null) {
+            Log.d(TAG, address + " not reachable, keeping " + entries.size() + " command(s)");
+            return false;
+        }
+
+        boolean allSent = true;
+        for (CommandOutbox.Entry entry : entries) {
+            if (isStopped()) {
+                allSent = false;
+                break;
+            }
+            BluetoothManager.SendResult result = send(bluetoothManager, address, entry.getFrame());
+            if (result != null) {
+                dependencies.auditLog().record(address, entry.getFrame(), result.isSuccess(), result.getResponse(),
+                        result.getLatencyMs(), result.getErrorMessage());
+            }
+            if (result != null && result.getFailure() == BluetoothManager.SendResult.Failure.NO_REPLY) {
+                // Written; replaying it could apply the command twice
+                Log.w(TAG, "No reply from " + address + ", not resending: " + result.getErrorMessage());
+            } else if (result == null || !result.isSuccess()) {
+                Log.w(TAG, "Sending to " + address + " failed: " + (result != null ? result.getErrorMessage() : "timed out"));
+                allSent = false;
+                break;
+            }
+            dependencies.commandOutbox().markDone(entry.getId());
+        }
+
+        bluetoothManager.releaseConnection(address, link);
+        return allSent;
+    }
+
+    /**
+     * @return The listener holding the ready link, or null if the meter could not be reached
+     */
+    private BluetoothManager.BluetoothGattCallback connect(BluetoothManager bluetoothManager, String address) {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicBoolean ready = new AtomicBoolean(false);
+        BluetoothManager.BluetoothGattCallback link = new BluetoothManager.BluetoothGattCallback() {
+            @Override
+            public void onConnected() {
+            }
+
+            @Override
+            public void onDisconnected() {
+            }
+
+            @Override
+            public void onServicesDiscovered() {
+                ready.set(true);
+                latch.countDown();
+            }
+
+            @Override
+            public void onConnectionFailed(String error) {
+                latch.countDown();
+            }
+        };
+        bluetoothManager.acquireConnection(address, link);
+        try {
+            latch.await(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!ready.get()) {
+            bluetoothManager.releaseConnection(address, link);
+            return null;
+        }
+        return link;
+    }
+
+    private BluetoothManager.SendResult send(BluetoothManager bluetoothManager, String address, byte[] frame) {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<BluetoothManager.SendResult> result = new AtomicReference<>();
+        bluetoothManager.sendRequest(address, frame, WriteMode.ACKNOWLEDGED, sendResult -> {
+            result.set(sendResult);
+            latch.countDown();
+        });
+        try {
+            latch.await(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result.get();
+    }
+}
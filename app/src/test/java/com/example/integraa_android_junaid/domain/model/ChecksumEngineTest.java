@@ -0,0 +1,103 @@
+package com.example.integraa_android_junaid.domain.model;
+
+import com.example.integraa_android_junaid.util.HexCodec;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check values from the CRC catalogue ("123456789") plus frames seen on the wire.
+ */
+public class ChecksumEngineTest {
+    private static final byte[] CHECK_INPUT = "123456789".getBytes(StandardCharsets.US_ASCII);
+    private static final ChecksumEngine[] ENGINES = {
+            ChecksumEngine.SUM8, ChecksumEngine.CRC16_MODBUS, ChecksumEngine.CRC8, ChecksumEngine.CRC8_MAXIM
+    };
+
+    @Test
+    public void crc16Modbus_checkValue() {
+        assertEquals(0x4B37, ChecksumEngine.CRC16_MODBUS.compute(CHECK_INPUT, 0, CHECK_INPUT.length));
+    }
+
+    @Test
+    public void crc16Modbus_writesLowByteFirst() {
+        // Read holding registers 0-9 of slave 1: the textbook Modbus RTU frame
+        byte[] request = HexCodec.decode("01030000000A");
+        byte[] out = new byte[2];
+        ChecksumEngine engine = ChecksumEngine.CRC16_MODBUS;
+        assertEquals(2, engine.write(engine.compute(request, 0, request.length), out, 0));
+        assertEquals("C5CD", HexCodec.encode(out));
+    }
+
+    @Test
+    public void crc8_checkValue() {
+        assertEquals(0xF4, ChecksumEngine.CRC8.compute(CHECK_INPUT, 0, CHECK_INPUT.length));
+    }
+
+    @Test
+    public void crc8Maxim_checkValue() {
+        assertEquals(0xA1, ChecksumEngine.CRC8_MAXIM.compute(CHECK_INPUT, 0, CHECK_INPUT.length));
+    }
+
+    @Test
+    public void sum8_isByteSumModulo256() {
+        assertEquals(0xDD, ChecksumEngine.SUM8.compute(CHECK_INPUT, 0, CHECK_INPUT.length));
+        byte[] frame = HexCodec.decode("68FF0201");
+        assertEquals(0x6A, ChecksumEngine.SUM8.compute(frame, 0, frame.length));
+    }
+
+    @Test
+    public void incrementalUpdates_matchOneShot() {
+        Random random = new Random(7);
+        byte[] frame = new byte[97];
+        random.nextBytes(frame);
+        for (ChecksumEngine engine : ENGINES) {
+            int oneShot = engine.compute(frame, 0, frame.length);
+            for (int split = 0; split <= frame.length; split += 8) {
+                int state = engine.update(engine.init(), frame, 0, split);
+                state = engine.update(state, frame, split, frame.length - split);
+                assertEquals(engine + " split at " + split, oneShot, state);
+            }
+            int byteByByte = engine.init();
+            for (int i = 0; i < frame.length; i++) {
+                byteByByte = engine.update(byteByByte, frame, i, 1);
+            }
+            assertEquals(engine.toString(), oneShot, byteByByte);
+        }
+    }
+
+    @Test
+    public void verify_acceptsWrittenChecksumAndRejectsCorruption() {
+        byte[] body = HexCodec.decode("6801020304A5");
+        for (ChecksumEngine engine : ENGINES) {
+            byte[] frame = new byte[body.length + engine.size()];
+            System.arraycopy(body, 0, frame, 0, body.length);
+            engine.write(engine.compute(body, 0, body.length), frame, body.length);
+            assertTrue(engine.toString(), engine.verify(frame, frame.length));
+
+            frame[1] ^= 0x01;
+            assertFalse(engine.toString(), engine.verify(frame, frame.length));
+            assertFalse(engine.toString(), engine.verify(frame, engine.size()));
+            assertFalse(engine.toString(), engine.verify(null, 0));
+        }
+    }
+
+    @Test
+    public void forName_ignoresCaseAndPunctuation() {
+        assertSame(ChecksumEngine.CRC16_MODBUS, ChecksumEngine.forName("CRC-16/MODBUS"));
+        assertSame(ChecksumEngine.CRC16_MODBUS, ChecksumEngine.forName("modbus"));
+        assertSame(ChecksumEngine.CRC8, ChecksumEngine.forName("crc_8"));
+        assertSame(ChecksumEngine.CRC8_MAXIM, ChecksumEngine.forName("CRC-8/Dallas"));
+    }
+
+    @Test
+    public void forName_fallsBackToSum8() {
+        assertSame(ChecksumEngine.SUM8, ChecksumEngine.forName(null));
+        assertSame(ChecksumEngine.SUM8, ChecksumEngine.forName("equal"));
+        assertSame(ChecksumEngine.SUM8, ChecksumEngine.forName("sha256"));
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.integraa_android_junaid.domain.model;
+
+import com.example.integraa_android_junaid.domain.usecase.CalculateChecksumUseCase;
+import com.example.integraa_android_junaid.util.HexCodec;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PayloadTemplateTest {
+    private static final String PAYLOAD = "68{MeterID}01{IP1}{Interval}{CHK}16";
+
+    private final PayloadBuilder builder = new PayloadBuilder(new CalculateChecksumUseCase(), new PayloadTemplateCache());
+
+    @Test
+    public void build_matchesLegacyStringPath() {
+        Map<String, Parameter> definitions = definitions();
+        Map<String, String> values = values("00A1B2C3", "192.168.1.1", "900");
+
+        String legacy = builder.buildPayload(PAYLOAD, values, definitions);
+        byte[] frame = PayloadTemplate.compile(PAYLOAD, definitions).build(values);
+
+        assertEquals("6800A1B2C301C0A80101000003847016", legacy);
+        assertEquals(legacy, HexCodec.encode(frame));
+        assertArrayEquals(frame, builder.buildFrame(PAYLOAD, values, definitions));
+    }
+
+    @Test
+    public void build_matchesLegacyStringPathWithoutDefinitions() {
+        Map<String, String> values = new HashMap<>();
+        values.put("MeterID", "0102");
+        String payload = "68{MeterID}{CHK}16";
+
+        assertEquals(builder.buildPayload(payload, values),
+                HexCodec.encode(PayloadTemplate.compile(payload, null).build(values)));
+    }
+
+    @Test
+    public void checksumSlot_coversEverythingBeforeIt() {
+        Map<String, Parameter> definitions = new HashMap<>();
+        definitions.put("CRC", new Parameter("CRC", "CRC", "checksum", "crc16modbus", null, null, null));
+        byte[] frame = PayloadTemplate.compile("01030000000A{CRC}", definitions).build(new HashMap<>());
+
+        assertEquals("01030000000AC5CD", HexCodec.encode(frame));
+    }
+
+    @Test
+    public void encodedLength_matchesBuiltFrame() {
+        PayloadTemplate template = PayloadTemplate.compile(PAYLOAD, definitions());
+        Map<String, String> values = values("00A1", "10.0.0.1", "60");
+
+        assertEquals(template.build(values).length, template.encodedLength(values));
+    }
+
+    @Test
+    public void writeTo_checksumStartsAtOffset() {
+        PayloadTemplate template = PayloadTemplate.compile(PAYLOAD, definitions());
+        Map<String, String> values = values("00A1B2C3", "192.168.1.1", "900");
+        byte[] buffer = new byte[64];
+        buffer[0] = 0x55;
+
+        int written = template.writeTo(values, buffer, 3);
+
+        byte[] expected = template.build(values);
+        assertEquals(expected.length, written);
+        byte[] actual = new byte[written];
+        System.arraycopy(buffer, 3, actual, 0, written);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void compile_rejectsMalformedPayloads() {
+        assertCompileFails("68{MeterID");
+        assertCompileFails("6{MeterID}");
+        assertCompileFails("6G{MeterID}");
+    }
+
+    @Test
+    public void build_rejectsMissingValues() {
+        PayloadTemplate template = PayloadTemplate.compile(PAYLOAD, definitions());
+        try {
+            template.build(new HashMap<>());
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    private static Map<String, Parameter> definitions() {
+        Map<String, Parameter> definitions = new HashMap<>();
+        definitions.put("MeterID", new Parameter("MeterID", "Meter ID", "text", "equal", null, null, null));
+        definitions.put("IP1", new Parameter("IP1", "IP", "text", "ip", null, null, null));
+        definitions.put("Interval", new Parameter("Interval", "Interval", "number", "int4", null, null, null));
+        definitions.put("CHK", new Parameter("CHK", "Checksum", "checksum", "sum8", null, null, null));
+        return definitions;
+    }
+
+    private static Map<String, String> values(String meterId, String ip, String interval) {
+        Map<String, String> values = new HashMap<>();
+        values.put("MeterID", meterId);
+        values.put("IP1", ip);
+        values.put("Interval", interval);
+        return values;
+    }
+
+    private static void assertCompileFails(String payload) {
+        try {
+            PayloadTemplate.compile(payload, null);
+            fail("Expected IllegalArgumentException for " + payload);
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.integraa_android_junaid.domain.model;
+
+import com.example.integraa_android_junaid.util.HexCodec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ValueEncoderRegistryTest {
+    private final ValueEncoderRegistry registry = ValueEncoderRegistry.getDefault();
+
+    @Test
+    public void equal_insertsHexAsTyped() {
+        assertEquals("0A1BFF", encode("equal", "0a1b ff"));
+        assertInvalid("equal", "ABC");
+    }
+
+    @Test
+    public void ip_encodesFourOctets() {
+        assertEquals("C0A80101", encode("ip", "192.168.1.1"));
+        assertEquals("00000000", encode("IP", "0.0.0.0"));
+        assertInvalid("ip", "192.168.1");
+        assertInvalid("ip", "192.168.1.256");
+        assertInvalid("ip", "192.168.1.1.1");
+        assertInvalid("ip", "192.168..1");
+        assertInvalid("ip", "a.b.c.d");
+    }
+
+    @Test
+    public void int1_encodesOneByte() {
+        assertEquals("FF", encode("int1", "255"));
+        assertEquals("80", encode("int1", "-128"));
+        assertInvalid("int1", "256");
+        assertInvalid("int1", "-129");
+    }
+
+    @Test
+    public void int2_isBigEndianAndInt2leLittleEndian() {
+        assertEquals("1395", encode("int2", "5013"));
+        assertEquals("9513", encode("int2le", "5013"));
+        assertEquals("FFFF", encode("int2", "-1"));
+        assertInvalid("int2", "65536");
+    }
+
+    @Test
+    public void int4_isBigEndianAndInt4leLittleEndian() {
+        assertEquals("00001395", encode("int4", "5013"));
+        assertEquals("95130000", encode("int4le", "5013"));
+        assertEquals("FFFFFFFF", encode("int4", "4294967295"));
+        assertEquals("80000000", encode("int4", "-2147483648"));
+        assertInvalid("int4", "4294967296");
+        assertInvalid("int4", "12a");
+    }
+
+    @Test
+    public void bcd_packsTwoDigitsPerByte() {
+        assertEquals("012345", encode("bcd", "12345"));
+        assertEquals("1234", encode("bcd", "1234"));
+        assertEquals("00", encode("bcd", "0"));
+        assertInvalid("bcd", "12a4");
+        assertInvalid("bcd", "");
+    }
+
+    @Test
+    public void float32_isIeee754() {
+        assertEquals("3F800000", encode("float32", "1"));
+        assertEquals("0000803F", encode("float32le", "1.0"));
+        assertEquals("C0490FDB", encode("float32", "-3.1415927"));
+        assertInvalid("float32", "one");
+    }
+
+    @Test
+    public void ascii_writesOneBytePerCharacter() {
+        assertEquals("4D3031", encode("ascii", "M01"));
+        assertInvalid("ascii", "Zähler");
+    }
+
+    @Test
+    public void resolve_isCaseInsensitiveAndFallsBackToEqual() {
+        assertSame(registry.resolve("int4"), registry.resolve("INT4"));
+        assertTrue(registry.isEqual(registry.resolve(null)));
+        assertTrue(registry.isEqual(registry.resolve("unknown")));
+        assertFalse(registry.isEqual(registry.resolve("ip")));
+    }
+
+    @Test
+    public void register_addsServerDefinedTypes() {
+        ValueEncoderRegistry custom = new ValueEncoderRegistry();
+        custom.register("Flag", new ValueEncoder() {
+            @Override
+            public int encodedLength(String value) {
+                return 1;
+            }
+
+            @Override
+            public int write(String value, byte[] out, int position) {
+                out[position] = (byte) ("on".equals(value) ? 1 : 0);
+                return position + 1;
+            }
+        });
+        ValueEncoder encoder = custom.resolve("flag");
+        byte[] out = new byte[1];
+        assertEquals(1, encoder.write("on", out, 0));
+        assertEquals(1, out[0]);
+    }
+
+    private String encode(String type, String value) {
+        ValueEncoder encoder = registry.resolve(type);
+        byte[] out = new byte[encoder.encodedLength(value)];
+        assertEquals(out.length, encoder.write(value, out, 0));
+        return HexCodec.encode(out);
+    }
+
+    private void assertInvalid(String type, String value) {
+        try {
+            encode(type, value);
+            fail("Expected " + type + " to reject \"" + value + "\"");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+}
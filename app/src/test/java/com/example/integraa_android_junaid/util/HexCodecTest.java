@@ -0,0 +1,109 @@
+package com.example.integraa_android_junaid.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HexCodecTest {
+
+    @Test
+    public void encodeThenDecode_roundTripsEveryByteValue() {
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        assertArrayEquals(bytes, HexCodec.decode(HexCodec.encode(bytes)));
+    }
+
+    @Test
+    public void encodeThenDecode_roundTripsRandomFrames() {
+        Random random = new Random(42);
+        for (int size : new int[] {1, 16, 64, 244}) {
+            byte[] frame = new byte[size];
+            random.nextBytes(frame);
+            assertArrayEquals(frame, HexCodec.decode(HexCodec.encode(frame)));
+        }
+    }
+
+    @Test
+    public void encode_isUpperCase() {
+        assertEquals("00FFAB7F", HexCodec.encode(new byte[] {0x00, (byte) 0xFF, (byte) 0xAB, 0x7F}));
+        assertEquals("0A", HexCodec.byteToHex(0x10A));
+    }
+
+    @Test
+    public void encode_rangeIntoCallerArray() {
+        byte[] bytes = {0x11, 0x22, 0x33, 0x44};
+        char[] out = new char[6];
+        assertEquals(4, HexCodec.encode(bytes, 1, 2, out, 1));
+        assertEquals("2233", new String(out, 1, 4));
+        assertEquals("2233", HexCodec.encode(bytes, 1, 2));
+        assertNull(HexCodec.encode(null));
+    }
+
+    @Test
+    public void decode_acceptsMixedCase() {
+        byte[] expected = {(byte) 0xAB, (byte) 0xCD, (byte) 0xEF};
+        assertArrayEquals(expected, HexCodec.decode("abcdef"));
+        assertArrayEquals(expected, HexCodec.decode("ABCDEF"));
+        assertArrayEquals(expected, HexCodec.decode("aBcDeF"));
+    }
+
+    @Test
+    public void decode_ignoresWhitespace() {
+        assertArrayEquals(new byte[] {0x68, (byte) 0xAB, 0x16}, HexCodec.decode("68 ab\t16"));
+        assertArrayEquals(new byte[] {0x68, (byte) 0xAB}, HexCodec.decode(" 6 8\nA B "));
+    }
+
+    @Test
+    public void decode_intoCallerArray() {
+        byte[] out = new byte[4];
+        assertEquals(2, HexCodec.decode("0102", out, 1));
+        assertArrayEquals(new byte[] {0, 1, 2, 0}, out);
+    }
+
+    @Test
+    public void decode_rejectsInvalidCharacters() {
+        assertDecodeFails("6Z");
+        assertDecodeFails("0x12");
+        assertDecodeFails("12éF");
+    }
+
+    @Test
+    public void decode_rejectsOddDigitCount() {
+        assertDecodeFails("123");
+        assertDecodeFails("12 3");
+    }
+
+    @Test
+    public void isValid_requiresWholeBytesOfHex() {
+        assertTrue(HexCodec.isValid("68 AB 16"));
+        assertTrue(HexCodec.isValid("ff"));
+        assertFalse(HexCodec.isValid("68A"));
+        assertFalse(HexCodec.isValid("68G0"));
+        assertFalse(HexCodec.isValid(""));
+        assertFalse(HexCodec.isValid("   "));
+        assertFalse(HexCodec.isValid(null));
+    }
+
+    @Test
+    public void digit_mapsHexDigitsOnly() {
+        assertEquals(0, HexCodec.digit('0'));
+        assertEquals(10, HexCodec.digit('a'));
+        assertEquals(15, HexCodec.digit('F'));
+        assertEquals(-1, HexCodec.digit('g'));
+        // Arabic-Indic zero: a digit to Character.digit, not to the codec
+        assertEquals(-1, HexCodec.digit('٠'));
+    }
+
+    private static void assertDecodeFails(String hex) {
+        try {
+            HexCodec.decode(hex);
+            fail("Expected IllegalArgumentException for \"" + hex + "\"");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+}